@@ -0,0 +1,113 @@
+/*
+ * (c) Samy Chambi and Daniel Lemire
+ */
+
+import java.util.Arrays;
+
+/**
+ *
+ * Bitmap index over a column of a table: one bitmap per distinct value of
+ * the column, holding the rows having that value. The bitmaps can be of any
+ * scheme, and are combined through the operations of Scheme.
+ *
+ */
+public class BitmapIndex {
+
+        private final Scheme scheme;
+        private final int rows;
+        private final Object[] bitmaps;
+        private final int[] cardinalities;
+        private Object all = null;
+
+        /**
+         * @param scheme
+         *                scheme of the bitmaps
+         * @param column
+         *                the value of each row, in [0, values)
+         * @param values
+         *                number of distinct values
+         */
+        public BitmapIndex(Scheme scheme, int[] column, int values) {
+                this.scheme = scheme;
+                this.rows = column.length;
+                // counting sort of the rows by value
+                int[] start = new int[values + 1];
+                for (int v : column)
+                        ++start[v + 1];
+                for (int v = 0; v < values; ++v)
+                        start[v + 1] += start[v];
+                int[] pos = Arrays.copyOf(start, values);
+                int[] sorted = new int[rows];
+                for (int r = 0; r < rows; ++r)
+                        sorted[pos[column[r]]++] = r;
+                bitmaps = new Object[values];
+                cardinalities = new int[values];
+                for (int v = 0; v < values; ++v) {
+                        bitmaps[v] = scheme.build(Arrays.copyOfRange(sorted,
+                                start[v], start[v + 1]));
+                        cardinalities[v] = start[v + 1] - start[v];
+                }
+        }
+
+        /**
+         * @return the scheme of the bitmaps
+         */
+        public Scheme getScheme() {
+                return scheme;
+        }
+
+        /**
+         * @return number of rows of the column
+         */
+        public int getRows() {
+                return rows;
+        }
+
+        /**
+         * @return number of distinct values
+         */
+        public int getValues() {
+                return bitmaps.length;
+        }
+
+        /**
+         * @param value
+         *                a value of the column
+         * @return the rows having this value
+         */
+        public Object get(int value) {
+                return bitmaps[value];
+        }
+
+        /**
+         * @param value
+         *                a value of the column
+         * @return the number of rows having this value
+         */
+        public int getCardinality(int value) {
+                return cardinalities[value];
+        }
+
+        /**
+         * @return all the rows, built on first use (for negations)
+         */
+        public Object getAll() {
+                if (all == null) {
+                        int[] a = new int[rows];
+                        for (int r = 0; r < rows; ++r)
+                                a[r] = r;
+                        all = scheme.build(a);
+                }
+                return all;
+        }
+
+        /**
+         * @return the estimated size of the bitmaps of the values in bytes
+         */
+        public long sizeInBytes() {
+                long size = 0;
+                for (Object b : bitmaps)
+                        size += scheme.sizeInBytes(b);
+                return size;
+        }
+}
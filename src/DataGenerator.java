@@ -10,11 +10,24 @@ import java.util.Random;
  * This is a data generator object reproducing the models used
  * by Colantonio and Di Pietro, Concise: Compressed n Composable Integer Set
  *
+ * It also offers models closer to real identifier spaces, with long runs
+ * and clustered gaps: clustered (recursive intervals), Markov on/off runs
+ * and power-law gaps. These produce sorted arrays in linear time.
+ *
  */
 public class DataGenerator {
+        /**
+         * the distributions the generator can produce
+         */
+        public enum Distribution {
+                UNIFORM, ZIPFIAN, CLUSTERED, MARKOV, POWERLAW
+        }
+
         public Random rand = new Random();
         public int N;
-        boolean zipfian = false;
+        Distribution distribution = Distribution.UNIFORM;
+        double runLength = 8;
+        double exponent = 1.5;
 
         /**
          * Will generate arrays with default size (100000)
@@ -30,37 +43,117 @@ public class DataGenerator {
                 if(n<1) throw new IllegalArgumentException("number of ints should be positive");
                 N = n;
         }
+
+        /**
+         * @param n size of the arrays
+         * @param seed seed of the pseudo-random generator, for reproducible data
+         */
+        public DataGenerator(final int n, final long seed) {
+                this(n);
+                rand = new Random(seed);
+        }
         
         /**
          * @return whether the data generator is in zipfian mode
          */
         public boolean is_zipfian() {
-                return zipfian;
+                return distribution == Distribution.ZIPFIAN;
+        }
+
+        /**
+         * @return the current distribution
+         */
+        public Distribution getDistribution() {
+                return distribution;
+        }
+
+        /**
+         * @param dist the distribution of the next arrays
+         */
+        public void setDistribution(Distribution dist) {
+                distribution = dist;
+        }
+
+        /**
+         * @return the name of the current distribution, in lower case
+         */
+        public String getName() {
+                return distribution.name().toLowerCase();
         }
         
         /**
          * set the data generator in uniform  mode
          */
         public void setUniform() {
-                zipfian = false;
+                distribution = Distribution.UNIFORM;
         }
         
         /**
          * set the data generator in Zipfian mode
          */
         public void setZipfian() {
-                zipfian = true;
+                distribution = Distribution.ZIPFIAN;
         }
+
+        /**
+         * set the data generator in clustered mode
+         */
+        public void setClustered() {
+                distribution = Distribution.CLUSTERED;
+        }
+
+        /**
+         * set the data generator in Markov on/off mode
+         */
+        public void setMarkov() {
+                distribution = Distribution.MARKOV;
+        }
+
+        /**
+         * set the data generator in power-law mode
+         */
+        public void setPowerLaw() {
+                distribution = Distribution.POWERLAW;
+        }
+
+        /**
+         * @param length average length of the runs of consecutive integers
+         * in Markov and power-law modes (at least 1); above a density of
+         * length / (length + 1), Markov runs merge into longer ones
+         */
+        public void setRunLength(double length) {
+                if(length<1) throw new IllegalArgumentException("run length should be at least 1");
+                runLength = length;
+        }
+
+        /**
+         * @param alpha tail exponent of the gaps in power-law mode: the closer
+         * to 1, the longer the runs and the wider the gaps (should be above 1)
+         */
+        public void setPowerLawExponent(double alpha) {
+                if(alpha<=1) throw new IllegalArgumentException("exponent should be above 1");
+                exponent = alpha;
+        }
+
         /**
          * Generate a random array (sorted integer set)
          * 
          * @param d should vary from 0 to 0.999
-         * @return an array with a uniform or zipfian distribution
+         * @return an array with the current distribution
          */
         public int[] getRandomArray(double d) {
-                if(zipfian)
+                switch(distribution) {
+                case ZIPFIAN:
                         return getZipfian(d);
-                return getUniform(d);
+                case CLUSTERED:
+                        return getClustered(d);
+                case MARKOV:
+                        return getMarkov(d);
+                case POWERLAW:
+                        return getPowerLaw(d);
+                default:
+                        return getUniform(d);
+                }
         }
         /**
          * Generate a random array (sorted integer set)
@@ -141,6 +234,155 @@ public class DataGenerator {
                 return answer;
         }
 
+        /**
+         * Generate a random array (sorted integer set).
+         * 
+         * This is the clustered model of Anh and Moffat (Index compression
+         * using 64-bit words): the range is recursively cut at a random point
+         * and each half either gets half of the integers uniformly, or is
+         * clustered again.
+         * 
+         * @param d should vary from 0 to 1.000
+         * @return an array with a clustered distribution
+         */
+        public int[] getClustered(double d) {
+                if((d<0) || (d>1.000)) throw new IllegalArgumentException("parameter should be in [0.005,0.999]");
+                int[] answer = new int[N];
+                if(d>=0.99) {
+                        for(int k = 0; k<N;++k) answer[k] = k;
+                        return answer;
+                }
+                final long max = (long) (N / d);
+                if(max > Integer.MAX_VALUE) throw new IllegalArgumentException("density is too low");
+                fillClustered(answer, 0, N, 0, (int) max);
+                return answer;
+        }
+
+        private void fillClustered(int[] array, int offset, int length, int min, int max) {
+                final int range = max - min;
+                if((range == length) || (length <= 10)) {
+                        fillUniform(array, offset, length, min, max);
+                        return;
+                }
+                final int cut = length / 2 + ((range - length - 1 > 0) ? rand.nextInt(range - length - 1) : 0);
+                final double p = rand.nextDouble();
+                if(p < 0.25) {
+                        fillUniform(array, offset, length / 2, min, min + cut);
+                        fillClustered(array, offset + length / 2, length - length / 2, min + cut, max);
+                } else if(p < 0.5) {
+                        fillClustered(array, offset, length / 2, min, min + cut);
+                        fillUniform(array, offset + length / 2, length - length / 2, min + cut, max);
+                } else {
+                        fillClustered(array, offset, length / 2, min, min + cut);
+                        fillClustered(array, offset + length / 2, length - length / 2, min + cut, max);
+                }
+        }
+
+        // sorted distinct integers from [min, max) in O(length): sorted
+        // uniform values (cumulated exponential spacings) in [0, range -
+        // length], plus their rank so that they become distinct
+        private void fillUniform(int[] array, int offset, int length, int min, int max) {
+                if(length == 0) return;
+                final int slack = max - min - length;
+                double[] sums = new double[length + 1];
+                double sum = 0;
+                for(int k = 0; k <= length; ++k) {
+                        sum -= Math.log(1 - rand.nextDouble());
+                        sums[k] = sum;
+                }
+                for(int k = 0; k < length; ++k) {
+                        int x = (int) Math.floor(sums[k] / sum * (slack + 1));
+                        array[offset + k] = min + Math.min(x, slack) + k;
+                }
+        }
+
+        /**
+         * Generate a random array (sorted integer set).
+         * 
+         * A two-state Markov chain walks the integers: runs of consecutive
+         * integers and gaps both have geometric lengths, the runs with the
+         * average set by setRunLength, the gaps so that the density is d.
+         * Above a density of runLength / (runLength + 1) the gaps average
+         * less than one integer: they can be empty, merging their runs.
+         * The gaps are shortened when the integers would exceed
+         * Integer.MAX_VALUE (below a density of about N / 2^31).
+         * 
+         * @param d should vary from 0 to 1.000
+         * @return an array made of runs
+         */
+        public int[] getMarkov(double d) {
+                if((d<0) || (d>1.000)) throw new IllegalArgumentException("parameter should be in [0.005,0.999]");
+                int[] answer = new int[N];
+                if(d>=0.99) {
+                        for(int k = 0; k<N;++k) answer[k] = k;
+                        return answer;
+                }
+                // the gaps average off integers, at least one if off >= 1
+                final double off = runLength * (1 - d) / d;
+                long x = Math.min(gap(off), Integer.MAX_VALUE + 1L - N);
+                int c = 0;
+                while(c < N) {
+                        for(long run = geometric(runLength); run > 0 && c < N; --run)
+                                answer[c++] = (int) x++;
+                        if(c == N) break;
+                        // keep room for the remaining integers
+                        final long room = Integer.MAX_VALUE + 1L - x - (N - c);
+                        x += Math.min(gap(off), room);
+                }
+                return answer;
+        }
+
+        // geometric length in {1, 2, ...} with the given average
+        private long geometric(double mean) {
+                if(mean <= 1) return 1;
+                return 1 + (long) Math.floor(Math.log(1 - rand.nextDouble()) / Math.log(1 - 1 / mean));
+        }
+
+        // geometric length with the given average, in {1, 2, ...} if it is at
+        // least 1, else in {0, 1, ...}
+        private long gap(double mean) {
+                if(mean >= 1) return geometric(mean);
+                return (long) Math.floor(Math.log(1 - rand.nextDouble()) / Math.log(mean / (1 + mean)));
+        }
+
+        /**
+         * Generate a random array (sorted integer set).
+         * 
+         * Runs of consecutive integers have geometric lengths, with the
+         * average set by setRunLength, and the gaps between runs follow a
+         * power law (Lomax distribution with the exponent set by
+         * setPowerLawExponent): most gaps are short and a few are huge. The
+         * gaps are scaled so that the density is d.
+         * 
+         * @param d should vary from 0 to 1.000
+         * @return an array with power-law gaps
+         */
+        public int[] getPowerLaw(double d) {
+                if((d<0) || (d>1.000)) throw new IllegalArgumentException("parameter should be in [0.005,0.999]");
+                int[] answer = new int[N];
+                if(d>=0.99) {
+                        for(int k = 0; k<N;++k) answer[k] = k;
+                        return answer;
+                }
+                // a run ends with probability 1 / runLength, and the gap that
+                // follows has average 1 + lambda / (exponent - 1), so that the
+                // average distance between integers is 1 / d
+                final double lambda = (exponent - 1) * runLength * (1 / d - 1);
+                long x = -1;
+                for(int c = 0; c < N; ++c) {
+                        double gap = 1;
+                        if(rand.nextDouble() * runLength < 1) {
+                                final double u = 1 - rand.nextDouble();
+                                gap += Math.floor(lambda * (Math.pow(u, -1 / exponent) - 1) + 0.5);
+                        }
+                        // keep room for the remaining integers
+                        final long room = (Integer.MAX_VALUE - x) / (N - c);
+                        x += (long) Math.min(gap, room);
+                        answer[c] = (int) x;
+                }
+                return answer;
+        }
+
 }
 
 
@@ -0,0 +1,246 @@
+/*
+ * (c) Samy Chambi and Daniel Lemire
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ *
+ * Streams the sorted integer lists of a dataset file through memory-mapped
+ * windows, a bounded batch at a time, so that neither the file nor a whole
+ * list has to be loaded in memory.
+ *
+ * Two formats are supported:
+ * <ul>
+ * <li>TEXT: one list per line, the integers being separated by commas,
+ * semicolons, spaces or tabs; empty lines and lines starting with # are
+ * skipped.</li>
+ * <li>BINARY: each list is its number of integers followed by the integers,
+ * all of them 32-bit little-endian.</li>
+ * </ul>
+ *
+ * Usage:
+ *
+ * <pre>
+ * DatasetReader r = new DatasetReader(file, DatasetReader.Format.TEXT);
+ * while (r.nextList()) {
+ *         int n;
+ *         while ((n = r.read(batch)) &gt; 0)
+ *                 ... // batch[0..n) holds the next integers of the list
+ * }
+ * r.close();
+ * </pre>
+ *
+ */
+public class DatasetReader implements Closeable {
+        /**
+         * file formats
+         */
+        public enum Format {
+                TEXT, BINARY
+        }
+
+        /**
+         * size of the mapped windows (64 MB)
+         */
+        public static final int WINDOW = 1 << 26;
+
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final long fileSize;
+        private final Format format;
+        private MappedByteBuffer buffer;
+        private long windowStart = 0;
+        private boolean inList = false;
+        // integers left in the current binary list
+        private long remaining = 0;
+        private long last = -1;
+        private int listCount = 0;
+
+        /**
+         * @param f
+         *                file to read
+         * @param format
+         *                format of the file
+         * @throws IOException
+         *                 if the file cannot be opened
+         */
+        public DatasetReader(final File f, final Format format) throws IOException {
+                this.file = new RandomAccessFile(f, "r");
+                this.channel = file.getChannel();
+                this.fileSize = channel.size();
+                this.format = format;
+                map(0);
+        }
+
+        /**
+         * @param f
+         *                a dataset file
+         * @return BINARY for .bin, .dat and .raw files, TEXT otherwise
+         */
+        public static Format guessFormat(final File f) {
+                String name = f.getName().toLowerCase();
+                if (name.endsWith(".bin") || name.endsWith(".dat")
+                        || name.endsWith(".raw"))
+                        return Format.BINARY;
+                return Format.TEXT;
+        }
+
+        /**
+         * @return the number of lists started so far
+         */
+        public int getListCount() {
+                return listCount;
+        }
+
+        private void map(long start) throws IOException {
+                windowStart = start;
+                long size = Math.min(WINDOW, fileSize - start);
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        // makes sure that the next n bytes are mapped, false at end of file
+        private boolean ensure(int n) throws IOException {
+                if (buffer.remaining() >= n)
+                        return true;
+                long position = windowStart + buffer.position();
+                if (fileSize - position < n)
+                        return false;
+                map(position);
+                return true;
+        }
+
+        /**
+         * Moves to the next list, skipping what is left of the current one.
+         *
+         * @return false when there is no more list
+         * @throws IOException
+         *                 on read errors
+         */
+        public boolean nextList() throws IOException {
+                if (format == Format.BINARY) {
+                        if (remaining > 0) {
+                                long position = windowStart + buffer.position()
+                                        + 4 * remaining;
+                                if (position > fileSize)
+                                        throw new IOException("truncated list");
+                                map(position);
+                        }
+                        if (!ensure(4)) {
+                                inList = false;
+                                return false;
+                        }
+                        remaining = buffer.getInt() & 0xFFFFFFFFL;
+                } else {
+                        if (inList)
+                                while (ensure(1) && buffer.get() != '\n')
+                                        ;
+                        while (true) {
+                                if (!ensure(1)) {
+                                        inList = false;
+                                        return false;
+                                }
+                                byte c = buffer.get(buffer.position());
+                                if (c == '#') {
+                                        while (ensure(1) && buffer.get() != '\n')
+                                                ;
+                                } else if (c == '\n' || c == '\r')
+                                        buffer.get();
+                                else
+                                        break;
+                        }
+                }
+                inList = true;
+                last = -1;
+                ++listCount;
+                return true;
+        }
+
+        /**
+         * Reads the next integers of the current list.
+         *
+         * @param batch
+         *                where to write the integers
+         * @return the number of integers written, 0 at the end of the list
+         * @throws IOException
+         *                 on read errors, or if the list is not sorted
+         */
+        public int read(final int[] batch) throws IOException {
+                if (!inList)
+                        return 0;
+                int n = format == Format.BINARY ? readBinary(batch)
+                        : readText(batch);
+                for (int k = 0; k < n; ++k) {
+                        if (batch[k] <= last)
+                                throw new IOException("list " + listCount
+                                        + " is not strictly increasing");
+                        last = batch[k];
+                }
+                return n;
+        }
+
+        private int readBinary(final int[] batch) throws IOException {
+                int n = 0;
+                while (n < batch.length && remaining > 0) {
+                        if (!ensure(4))
+                                throw new IOException("truncated list");
+                        int x = buffer.getInt();
+                        if (x < 0)
+                                throw new IOException("negative integer in list "
+                                        + listCount);
+                        batch[n++] = x;
+                        --remaining;
+                }
+                if (remaining == 0)
+                        inList = false;
+                return n;
+        }
+
+        private int readText(final int[] batch) throws IOException {
+                int n = 0;
+                long x = -1;
+                while (n < batch.length) {
+                        if (!ensure(1)) {
+                                inList = false;
+                                break;
+                        }
+                        byte c = buffer.get();
+                        if (c >= '0' && c <= '9') {
+                                x = (x < 0 ? 0 : 10 * x) + (c - '0');
+                                if (x > Integer.MAX_VALUE)
+                                        throw new IOException("integer too large in list "
+                                                + listCount);
+                                continue;
+                        }
+                        if (x >= 0) {
+                                batch[n++] = (int) x;
+                                x = -1;
+                        }
+                        if (c == '\n') {
+                                inList = false;
+                                break;
+                        }
+                        if (c != ',' && c != ';' && c != ' ' && c != '\t'
+                                && c != '\r')
+                                throw new IOException("unexpected character '"
+                                        + (char) c + "' in list " + listCount);
+                }
+                if (x >= 0)
+                        batch[n++] = (int) x;
+                return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+                buffer = null;
+                channel.close();
+                file.close();
+        }
+}
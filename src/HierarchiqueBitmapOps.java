@@ -0,0 +1,496 @@
+/*
+ * (c) Samy Chambi and Daniel Lemire
+ */
+
+import java.util.NoSuchElementException;
+
+/**
+ *
+ * Operations on HierarchiqueBitmap that are not provided by the
+ * HierarchiqueBitmap library. They only rely on the public accessors of Node,
+ * so that the library jar does not need to be rebuilt.
+ *
+ * A HierarchiqueBitmap is a binary trie: the node at depth k (the root being
+ * at depth 0) holds the k-th most significant bit of the integers stored
+ * below it, and each integer is a path ending on a leaf at depth 32. Results
+ * of Node.AND can contain dead branches (internal nodes without any leaf
+ * below them), they are ignored here.
+ *
+ * Ranges are half-open intervals [lo, hi) of unsigned integers, given as
+ * longs with 0 &lt;= lo &lt;= hi &lt;= 2^32, since the trie orders integers by
+ * their unsigned value. A subtree fully covered by a range added through
+ * addRange is a canonical full subtree shared by all bitmaps (see FULL), so
+ * that adding, removing or counting it does not descend into it. Node.push
+ * never modifies the nodes it goes through, so later insertions below such a
+ * subtree are safe, while removeRange copies the shared nodes it traverses.
+ *
+ * The trie of a bitmap given to addRange is thus a DAG, which only the
+ * methods of this class know about: they keep the full subtrees shared. The
+ * library walks it as a tree, so that Node.clone, HierarchiqueBitmap.length,
+ * HierarchiqueBitmap.OR and HierarchiqueBitmap.AND expand every full subtree
+ * they meet, in time and memory proportional to the width of the range. Such
+ * bitmaps should be copied with clone and measured with length below.
+ *
+ */
+public final class HierarchiqueBitmapOps {
+
+        /**
+         * depth of the leaves, one level per bit of an integer
+         */
+        public static final int LEAF_DEPTH = 32;
+
+        /**
+         * FULL[bit][h] holds every integer of the interval of a node of value
+         * bit having h levels below it; its children are FULL[0][h - 1] and
+         * FULL[1][h - 1].
+         */
+        private static final Node[][] FULL = new Node[2][LEAF_DEPTH + 1];
+
+        static {
+                for (int h = 0; h <= LEAF_DEPTH; ++h)
+                        for (int bit = 0; bit < 2; ++bit) {
+                                Node n = new Node(bit == 1);
+                                if (h > 0) {
+                                        n.setLeft(FULL[0][h - 1]);
+                                        n.setRight(FULL[1][h - 1]);
+                                }
+                                FULL[bit][h] = n;
+                        }
+        }
+
+        private HierarchiqueBitmapOps() {
+        }
+
+        /**
+         * @param b1
+         *                first bitmap
+         * @param b2
+         *                second bitmap
+         * @return a new bitmap holding the integers present in exactly one of
+         *         b1 and b2
+         */
+        public static HierarchiqueBitmap XOR(HierarchiqueBitmap b1,
+                HierarchiqueBitmap b2) {
+                HierarchiqueBitmap res = new HierarchiqueBitmap();
+                res.setRoot(XOR(b1.getRoot(), b2.getRoot()));
+                return res;
+        }
+
+        /**
+         * @param b1
+         *                first bitmap
+         * @param b2
+         *                second bitmap
+         * @return a new bitmap holding the integers of b1 that are not in b2
+         */
+        public static HierarchiqueBitmap ANDNOT(HierarchiqueBitmap b1,
+                HierarchiqueBitmap b2) {
+                HierarchiqueBitmap res = new HierarchiqueBitmap();
+                res.setRoot(ANDNOT(b1.getRoot(), b2.getRoot()));
+                return res;
+        }
+
+        /**
+         * Symmetric difference of two roots. Subtrees present on one side
+         * only are cloned, like Node.OR does.
+         *
+         * @param n1
+         *                root of the first trie
+         * @param n2
+         *                root of the second trie
+         * @return the root of a new trie
+         */
+        public static Node XOR(Node n1, Node n2) {
+                Node res = new Node(n1.getValue());
+                res.setLeft(xorChild(n1.getLeft(), n2.getLeft(), 1));
+                res.setRight(xorChild(n1.getRight(), n2.getRight(), 1));
+                return res;
+        }
+
+        /**
+         * Difference of two roots. Subtrees of n1 that have no counterpart in
+         * n2 are cloned.
+         *
+         * @param n1
+         *                root of the first trie
+         * @param n2
+         *                root of the second trie
+         * @return the root of a new trie
+         */
+        public static Node ANDNOT(Node n1, Node n2) {
+                Node res = new Node(n1.getValue());
+                res.setLeft(andNotChild(n1.getLeft(), n2.getLeft(), 1));
+                res.setRight(andNotChild(n1.getRight(), n2.getRight(), 1));
+                return res;
+        }
+
+        private static Node xorChild(Node c1, Node c2, int depth) {
+                if (c1 == null)
+                        return c2 == null ? null : copy(c2, LEAF_DEPTH - depth);
+                if (c2 == null)
+                        return copy(c1, LEAF_DEPTH - depth);
+                if (depth == LEAF_DEPTH)
+                        return null;
+                Node left = xorChild(c1.getLeft(), c2.getLeft(), depth + 1);
+                Node right = xorChild(c1.getRight(), c2.getRight(), depth + 1);
+                if (left == null && right == null)
+                        return null;
+                Node res = new Node(c1.getValue());
+                res.setLeft(left);
+                res.setRight(right);
+                return res;
+        }
+
+        private static Node andNotChild(Node c1, Node c2, int depth) {
+                if (c1 == null)
+                        return null;
+                if (c2 == null)
+                        return copy(c1, LEAF_DEPTH - depth);
+                if (depth == LEAF_DEPTH)
+                        return null;
+                Node left = andNotChild(c1.getLeft(), c2.getLeft(), depth + 1);
+                Node right = andNotChild(c1.getRight(), c2.getRight(),
+                        depth + 1);
+                if (left == null && right == null)
+                        return null;
+                Node res = new Node(c1.getValue());
+                res.setLeft(left);
+                res.setRight(right);
+                return res;
+        }
+
+        /**
+         * Unlike Node.clone, keeps the full subtrees of addRange shared.
+         *
+         * @param b
+         *                a bitmap
+         * @return a copy of b
+         */
+        public static HierarchiqueBitmap clone(HierarchiqueBitmap b) {
+                HierarchiqueBitmap res = new HierarchiqueBitmap();
+                res.setRoot(copy(b.getRoot(), LEAF_DEPTH));
+                return res;
+        }
+
+        // copy of a node having height levels below it
+        private static Node copy(Node n, int height) {
+                if (isFull(n, height))
+                        return n;
+                Node res = new Node(n.getValue());
+                if (n.getLeft() != null)
+                        res.setLeft(copy(n.getLeft(), height - 1));
+                if (n.getRight() != null)
+                        res.setRight(copy(n.getRight(), height - 1));
+                return res;
+        }
+
+        /**
+         * Same as HierarchiqueBitmap.length on a tree, but a full subtree of
+         * addRange counts as a single node, since it is shared by all the
+         * bitmaps.
+         *
+         * @param b
+         *                a bitmap
+         * @return the number of nodes of b
+         */
+        public static long length(HierarchiqueBitmap b) {
+                return length(b.getRoot(), LEAF_DEPTH);
+        }
+
+        private static long length(Node n, int height) {
+                if (isFull(n, height))
+                        return 1;
+                long len = 1;
+                if (n.getLeft() != null)
+                        len += length(n.getLeft(), height - 1);
+                if (n.getRight() != null)
+                        len += length(n.getRight(), height - 1);
+                return len;
+        }
+
+        /**
+         * @param b
+         *                a bitmap
+         * @return the number of integers stored in b (length() counts nodes),
+         *         up to 2^32 after addRange
+         */
+        public static long cardinality(HierarchiqueBitmap b) {
+                return count(b.getRoot(), LEAF_DEPTH);
+        }
+
+        /**
+         * Exact emptiness test: unlike a test on the children of the root, it
+         * ignores the dead branches left by Node.AND, and stops at the first
+         * leaf.
+         *
+         * @param b
+         *                a bitmap
+         * @return whether b holds no integer
+         */
+        public static boolean isEmpty(HierarchiqueBitmap b) {
+                return !hasLeaf(b.getRoot(), LEAF_DEPTH);
+        }
+
+        private static boolean hasLeaf(Node n, int height) {
+                if (height == 0)
+                        return true;
+                return (n.getLeft() != null && hasLeaf(n.getLeft(), height - 1))
+                        || (n.getRight() != null && hasLeaf(n.getRight(), height - 1));
+        }
+
+        // number of leaves below a node having height levels below it
+        private static long count(Node n, int height) {
+                if (height == 0)
+                        return 1;
+                if (isFull(n, height))
+                        return 1L << height;
+                long card = 0;
+                if (n.getLeft() != null)
+                        card += count(n.getLeft(), height - 1);
+                if (n.getRight() != null)
+                        card += count(n.getRight(), height - 1);
+                return card;
+        }
+
+        private static boolean isFull(Node n, int height) {
+                return n == FULL[n.getValue() ? 1 : 0][height];
+        }
+
+        private static void checkRange(long lo, long hi) {
+                if ((lo < 0) || (lo > hi) || (hi > (1L << LEAF_DEPTH)))
+                        throw new IllegalArgumentException(
+                                "range should be within [0, 2^32]");
+        }
+
+        /**
+         * @param b
+         *                a bitmap
+         * @param lo
+         *                first integer of the range
+         * @param hi
+         *                end of the range (excluded)
+         * @return the number of integers of b within [lo, hi)
+         */
+        public static long rangeCardinality(HierarchiqueBitmap b, long lo,
+                long hi) {
+                checkRange(lo, hi);
+                return rangeCardinality(b.getRoot(), 0, 0, lo, hi);
+        }
+
+        // n covers [base, base + 2^(32 - depth)) and intersects [lo, hi)
+        private static long rangeCardinality(Node n, int depth, long base,
+                long lo, long hi) {
+                final long half = 1L << (LEAF_DEPTH - depth - 1);
+                long card = 0;
+                for (int bit = 0; bit < 2; ++bit) {
+                        Node c = bit == 0 ? n.getLeft() : n.getRight();
+                        long start = base + bit * half;
+                        if (c == null || start >= hi || start + half <= lo)
+                                continue;
+                        if (lo <= start && start + half <= hi)
+                                card += count(c, LEAF_DEPTH - depth - 1);
+                        else
+                                card += rangeCardinality(c, depth + 1, start,
+                                        lo, hi);
+                }
+                return card;
+        }
+
+        /**
+         * Adds all the integers of [lo, hi) to b.
+         *
+         * @param b
+         *                a bitmap
+         * @param lo
+         *                first integer of the range
+         * @param hi
+         *                end of the range (excluded)
+         */
+        public static void addRange(HierarchiqueBitmap b, long lo, long hi) {
+                checkRange(lo, hi);
+                if (lo < hi)
+                        addRange(b.getRoot(), 0, 0, lo, hi);
+        }
+
+        private static void addRange(Node n, int depth, long base, long lo,
+                long hi) {
+                final int height = LEAF_DEPTH - depth - 1;
+                final long half = 1L << height;
+                for (int bit = 0; bit < 2; ++bit) {
+                        Node c = bit == 0 ? n.getLeft() : n.getRight();
+                        long start = base + bit * half;
+                        if (start >= hi || start + half <= lo)
+                                continue;
+                        if (lo <= start && start + half <= hi)
+                                c = FULL[bit][height];
+                        else if (c == null) {
+                                c = new Node(bit == 1);
+                                addRange(c, depth + 1, start, lo, hi);
+                        } else if (!isFull(c, height))
+                                addRange(c, depth + 1, start, lo, hi);
+                        if (bit == 0)
+                                n.setLeft(c);
+                        else
+                                n.setRight(c);
+                }
+        }
+
+        /**
+         * Removes all the integers of [lo, hi) from b.
+         *
+         * @param b
+         *                a bitmap
+         * @param lo
+         *                first integer of the range
+         * @param hi
+         *                end of the range (excluded)
+         */
+        public static void removeRange(HierarchiqueBitmap b, long lo, long hi) {
+                checkRange(lo, hi);
+                if (lo < hi)
+                        removeRange(b.getRoot(), 0, 0, lo, hi);
+        }
+
+        private static void removeRange(Node n, int depth, long base, long lo,
+                long hi) {
+                final int height = LEAF_DEPTH - depth - 1;
+                final long half = 1L << height;
+                for (int bit = 0; bit < 2; ++bit) {
+                        Node c = bit == 0 ? n.getLeft() : n.getRight();
+                        long start = base + bit * half;
+                        if (c == null || start >= hi || start + half <= lo)
+                                continue;
+                        if (lo <= start && start + half <= hi)
+                                c = null;
+                        else {
+                                if (isFull(c, height)) {
+                                        // copy on write of the shared node
+                                        c = new Node(bit == 1);
+                                        c.setLeft(FULL[0][height - 1]);
+                                        c.setRight(FULL[1][height - 1]);
+                                }
+                                removeRange(c, depth + 1, start, lo, hi);
+                                if (c.getLeft() == null && c.getRight() == null)
+                                        c = null;
+                        }
+                        if (bit == 0)
+                                n.setLeft(c);
+                        else
+                                n.setRight(c);
+                }
+        }
+
+        /**
+         * @param b
+         *                a bitmap
+         * @param lo
+         *                first integer of the range
+         * @param hi
+         *                end of the range (excluded)
+         * @return an iterator over the integers of b within [lo, hi), in
+         *         unsigned increasing order
+         */
+        public static IntIterator iterator(HierarchiqueBitmap b, long lo,
+                long hi) {
+                checkRange(lo, hi);
+                return new RangeIterator(b.getRoot(), lo, hi);
+        }
+
+        /**
+         * Depth-first walk of the trie that skips the subtrees outside of the
+         * range.
+         */
+        private static final class RangeIterator implements IntIterator {
+                // at most one pending sibling per level, plus the current path
+                private final Node[] nodes = new Node[LEAF_DEPTH + 2];
+                private final int[] depths = new int[LEAF_DEPTH + 2];
+                private final long[] bases = new long[LEAF_DEPTH + 2];
+                private final long lo, hi;
+                private int size = 0;
+                private boolean hasNext;
+                private int current;
+
+                RangeIterator(Node root, long lo, long hi) {
+                        this.lo = lo;
+                        this.hi = hi;
+                        if (lo < hi)
+                                push(root, 0, 0);
+                        advance();
+                }
+
+                private void push(Node n, int depth, long base) {
+                        nodes[size] = n;
+                        depths[size] = depth;
+                        bases[size] = base;
+                        ++size;
+                }
+
+                private void advance() {
+                        while (size > 0) {
+                                --size;
+                                Node n = nodes[size];
+                                int depth = depths[size];
+                                long base = bases[size];
+                                nodes[size] = null;
+                                if (depth == LEAF_DEPTH) {
+                                        current = (int) base;
+                                        hasNext = true;
+                                        return;
+                                }
+                                long half = 1L << (LEAF_DEPTH - depth - 1);
+                                if (n.getRight() != null && base + half < hi)
+                                        push(n.getRight(), depth + 1,
+                                                base + half);
+                                if (n.getLeft() != null && base + half > lo)
+                                        push(n.getLeft(), depth + 1, base);
+                        }
+                        hasNext = false;
+                }
+
+                @Override
+                public boolean hasNext() {
+                        return hasNext;
+                }
+
+                @Override
+                public int next() {
+                        if (!hasNext)
+                                throw new NoSuchElementException();
+                        int answer = current;
+                        advance();
+                        return answer;
+                }
+        }
+
+        /**
+         * @param b
+         *                a bitmap
+         * @return the integers stored in b, in unsigned increasing order
+         * @throws IllegalStateException
+         *                 if b holds too many integers for an array
+         */
+        public static int[] toArray(HierarchiqueBitmap b) {
+                long card = cardinality(b);
+                if (card > Integer.MAX_VALUE)
+                        throw new IllegalStateException(card
+                                + " integers do not fit in an array");
+                int[] answer = new int[(int) card];
+                fill(b.getRoot(), 0, 0, answer, 0);
+                return answer;
+        }
+
+        private static int fill(Node n, int prefix, int depth, int[] answer,
+                int pos) {
+                if (depth == LEAF_DEPTH) {
+                        answer[pos] = prefix;
+                        return pos + 1;
+                }
+                if (n.getLeft() != null)
+                        pos = fill(n.getLeft(), prefix, depth + 1, answer, pos);
+                if (n.getRight() != null)
+                        pos = fill(n.getRight(),
+                                prefix | (1 << (LEAF_DEPTH - 1 - depth)),
+                                depth + 1, answer, pos);
+                return pos;
+        }
+}
@@ -0,0 +1,450 @@
+/*
+ * (c) Samy Chambi and Daniel Lemire
+ */
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import net.sourceforge.sizeof.SizeOf;
+
+/**
+ *
+ * Bitmap index benchmark: every column of a table is indexed with one bitmap
+ * per distinct value, for each scheme, and mixes of boolean queries are
+ * evaluated on the indexes. We report the queries per second of each mix,
+ * with the optimized and the naive evaluation of Predicate, the build time
+ * and the size of the indexes.
+ *
+ * The table is either generated (columns of a few to 10000 values, uniform,
+ * Zipfian or sorted) or loaded from a CSV file, each distinct field of a
+ * column being a value.
+ *
+ * Usage:
+ *
+ * <pre>
+ * java -cp ... IndexBench [rows=100000] [queries=100] [seed=0] [table=file.csv [header]] [budget=60] [precision=0.02]
+ * </pre>
+ *
+ */
+public class IndexBench {
+
+        /**
+         * number of values of the generated columns
+         */
+        public static final int[] VALUES = {2, 12, 100, 10000, 1000};
+
+        /**
+         * Zipf exponent of the generated columns (0 for uniform)
+         */
+        public static final double[] SKEWS = {0, 0, 1, 1, 0};
+
+        /**
+         * whether the table is sorted on the generated column, so that each
+         * of its values is a run of rows
+         */
+        public static final boolean[] SORTED = {false, false, false, false, true};
+
+        /**
+         * query mixes
+         */
+        public static final String[] MIXES = {"point", "and", "in", "andnot",
+                "mixed"};
+
+        /**
+         * minimal time in ns of the queries of a mix in one sample
+         */
+        public static final long SAMPLE_TIME = 10000000L;
+
+        /**
+         * default time budget in ns of each scheme: an iteration evaluates
+         * all the mixes, optimized and naive, so that the budget of
+         * RunController leaves too few samples
+         */
+        public static final long BUDGET = 60000000000L;
+
+        private static int bogus = 0;
+
+        /**
+         * @param args
+         *                command line arguments, see the class documentation
+         */
+        public static void main(final String[] args) {
+                Locale.setDefault(Locale.US);
+                RunController.budget = BUDGET;
+                int rows = 100000;
+                int count = 100;
+                long seed = 0;
+                String file = null;
+                boolean header = false;
+                for (String arg : args)
+                        if (arg.startsWith("rows="))
+                                rows = Integer.parseInt(arg.substring(5));
+                        else if (arg.startsWith("queries="))
+                                count = Integer.parseInt(arg.substring(8));
+                        else if (arg.startsWith("seed="))
+                                seed = Long.parseLong(arg.substring(5));
+                        else if (arg.startsWith("table="))
+                                file = arg.substring(6);
+                        else if (arg.equals("header"))
+                                header = true;
+                        else if (arg.startsWith("precision="))
+                                RunController.precision = Double.parseDouble(arg.substring(10));
+                        else if (arg.startsWith("budget="))
+                                RunController.budget = (long) (Double.parseDouble(arg.substring(7)) * 1e9);
+                        else
+                                throw new IllegalArgumentException("unknown argument: " + arg);
+                boolean sizeof = true;
+                try {
+                        SizeOf.setMinSizeToLog(0);
+                        SizeOf.skipStaticField(true);
+                        SizeOf.deepSizeOf(args);
+                } catch (IllegalStateException e) {
+                        sizeof = false;
+                        System.out
+                                .println("# disabling sizeOf, run  -javaagent:lib/SizeOf.jar or equiv. to enable");
+                }
+                Random rand = new Random(seed);
+                int[][] table;
+                int[] values;
+                if (file == null) {
+                        table = new int[VALUES.length][];
+                        for (int c = 0; c < VALUES.length; ++c)
+                                table[c] = generate(rows, VALUES[c], SKEWS[c], rand);
+                        for (int c = 0; c < VALUES.length; ++c)
+                                if (SORTED[c])
+                                        sortRows(table, c);
+                        values = VALUES.clone();
+                } else {
+                        try {
+                                List<Map<String, Integer>> dictionaries = new ArrayList<Map<String, Integer>>();
+                                table = load(file, header, dictionaries);
+                        } catch (IOException e) {
+                                System.out.println("# cannot read " + file + ": "
+                                        + e.getMessage());
+                                return;
+                        }
+                        values = new int[table.length];
+                        for (int c = 0; c < table.length; ++c)
+                                for (int v : table[c])
+                                        values[c] = Math.max(values[c], v + 1);
+                }
+                Predicate[][] queries = new Predicate[MIXES.length][];
+                for (int m = 0; m < MIXES.length; ++m)
+                        queries[m] = queries(MIXES[m], table, count, rand);
+                System.out.println("# verifying the answers");
+                Map<Scheme, String> failures = new EnumMap<Scheme, String>(Scheme.class);
+                for (Scheme scheme : Scheme.values()) {
+                        String failure;
+                        try {
+                                failure = verify(index(scheme, table, values), table, queries);
+                        } catch (RuntimeException e) {
+                                failure = e.toString();
+                        }
+                        if (failure != null)
+                                failures.put(scheme, failure);
+                }
+                System.out.println("# start counting benchmark performances");
+                System.out.println("### index test: " + table[0].length + " rows, "
+                        + Arrays.toString(values) + " values per column, "
+                        + count + " queries per mix");
+                System.out.println("# queries/s with the optimized evaluation, then with the naive one, "
+                        + "then build times in ns per row and column, then bits/row");
+                if (sizeof)
+                        System.out.println("# For size (last columns), first column is estimated, second is sizeof");
+                StringBuilder mixes = new StringBuilder();
+                for (String mix : MIXES)
+                        mixes.append("\t").append(mix).append("\t");
+                System.out.println("# scheme\t" + mixes + "\t" + mixes
+                        + "\tbuild\t\tbits/row");
+                DecimalFormat df = new DecimalFormat("0.000E0");
+                DecimalFormat dfb = new DecimalFormat("000.0");
+                for (Scheme scheme : Scheme.values())
+                        if (failures.containsKey(scheme))
+                                System.out.println("# " + scheme + " not timed, "
+                                        + failures.get(scheme));
+                        else
+                                bench(scheme, table, values, queries, sizeof, df, dfb);
+                System.out.println("#ignore = " + bogus);
+        }
+
+        private static BitmapIndex[] index(Scheme scheme, int[][] table, int[] values) {
+                BitmapIndex[] columns = new BitmapIndex[table.length];
+                for (int c = 0; c < table.length; ++c)
+                        columns[c] = new BitmapIndex(scheme, table[c], values[c]);
+                return columns;
+        }
+
+        // null if every query is answered correctly, else the first wrong one
+        private static String verify(BitmapIndex[] columns, int[][] table,
+                Predicate[][] queries) {
+                Scheme scheme = columns[0].getScheme();
+                int rows = table[0].length;
+                int[] truth = new int[rows];
+                for (Predicate[] mix : queries)
+                        for (Predicate q : mix) {
+                                int n = 0;
+                                for (int r = 0; r < rows; ++r)
+                                        if (q.matches(table, r))
+                                                truth[n++] = r;
+                                int[] expected = Arrays.copyOf(truth, n);
+                                if (!Arrays.equals(scheme.toArray(q.evaluate(columns,
+                                        true)), expected)
+                                        || !Arrays.equals(scheme.toArray(q.evaluate(
+                                                columns, false)), expected))
+                                        return "wrong answer to " + q;
+                        }
+                return null;
+        }
+
+        private static void bench(Scheme scheme, int[][] table, int[] values,
+                Predicate[][] queries, boolean sizeof, DecimalFormat df,
+                DecimalFormat dfb) {
+                int rows = table[0].length;
+                long bef = System.nanoTime();
+                BitmapIndex[] columns = index(scheme, table, values);
+                long aft = System.nanoTime();
+                double build = (aft - bef) / ((double) rows * table.length);
+                double bits = 0;
+                for (BitmapIndex c : columns)
+                        bits += c.sizeInBytes() * 8.0 / rows;
+                double truebits = sizeof ? SizeOf.deepSizeOf(columns) * 8.0 / rows : 0;
+                // the rows complementing negations are not part of the index
+                columns[0].getAll();
+                // cheap mixes are repeated so that no sample is lost in the
+                // noise of the timer and of the collector
+                int[] optimizedReps = calibrate(scheme, columns, queries, true);
+                int[] naiveReps = calibrate(scheme, columns, queries, false);
+                double[] optimized = new double[MIXES.length];
+                double[] naive = new double[MIXES.length];
+                RunController rc = new RunController();
+                rc.watch(optimized);
+                rc.watch(naive);
+                while (rc.next())
+                        for (int m = 0; m < MIXES.length; ++m) {
+                                optimized[m] += run(scheme, columns, queries[m],
+                                        true, optimizedReps[m]);
+                                naive[m] += run(scheme, columns, queries[m],
+                                        false, naiveReps[m]);
+                        }
+                StringBuilder sb = new StringBuilder(scheme.toString());
+                for (int e = 0; e < 2; ++e) {
+                        double[] times = e == 0 ? optimized : naive;
+                        int[] reps = e == 0 ? optimizedReps : naiveReps;
+                        sb.append("\t");
+                        for (int m = 0; m < MIXES.length; ++m)
+                                sb.append("\t").append(df.format(queries[m].length
+                                        * (double) reps[m] * 1e9 * rc.getSamples()
+                                        / times[m])).append("\t");
+                }
+                sb.append("\t").append(df.format(build)).append("\t\t").append(dfb.format(bits));
+                if (sizeof)
+                        sb.append("\t").append(dfb.format(truebits));
+                System.out.println(sb);
+                System.out.println(rc.summary());
+                System.out.println("# 95% CI half-widths in %: optimized "
+                        + rc.precisions(0) + "; naive " + rc.precisions(1));
+                System.out.println("# repetitions of the queries per sample: optimized "
+                        + Arrays.toString(optimizedReps) + "; naive "
+                        + Arrays.toString(naiveReps));
+                if (!rc.isPrecise())
+                        System.out.println("# WARNING: the queries/s of " + scheme
+                                + " are not within "
+                                + new DecimalFormat("0.0").format(100 * RunController.precision)
+                                + "%, rerun with a larger budget=");
+        }
+
+        // times of reps evaluations of every query of a mix, in ns
+        private static long run(Scheme scheme, BitmapIndex[] columns,
+                Predicate[] mix, boolean optimized, int reps) {
+                long bef = System.nanoTime();
+                for (int r = 0; r < reps; ++r)
+                        for (Predicate q : mix)
+                                if (scheme.isEmpty(q.evaluate(columns, optimized)))
+                                        ++bogus;
+                return System.nanoTime() - bef;
+        }
+
+        // number of repetitions of each mix lasting at least SAMPLE_TIME
+        private static int[] calibrate(Scheme scheme, BitmapIndex[] columns,
+                Predicate[][] queries, boolean optimized) {
+                int[] reps = new int[queries.length];
+                for (int m = 0; m < queries.length; ++m) {
+                        reps[m] = 1;
+                        while (run(scheme, columns, queries[m], optimized, reps[m]) < SAMPLE_TIME
+                                && reps[m] < 1 << 20)
+                                reps[m] *= 2;
+                }
+                return reps;
+        }
+
+        /**
+         * @param mix
+         *                one of MIXES
+         * @param table
+         *                values of the columns, table[column][row]
+         * @param count
+         *                number of queries
+         * @param rand
+         *                pseudo-random generator
+         * @return queries whose values are drawn from random rows, so that
+         *         frequent values are queried more often
+         */
+        public static Predicate[] queries(String mix, int[][] table, int count,
+                Random rand) {
+                Predicate[] answer = new Predicate[count];
+                for (int k = 0; k < count; ++k) {
+                        int[] c = columns(table.length, rand);
+                        if (mix.equals("point"))
+                                answer[k] = eq(table, c[0], rand);
+                        else if (mix.equals("and"))
+                                answer[k] = rand.nextBoolean() ? Predicate.and(
+                                        eq(table, c[0], rand), eq(table, c[1], rand))
+                                        : Predicate.and(eq(table, c[0], rand),
+                                                eq(table, c[1], rand), eq(table, c[2], rand));
+                        else if (mix.equals("in"))
+                                answer[k] = in(table, c[0], 5, rand);
+                        else if (mix.equals("andnot"))
+                                answer[k] = Predicate.and(eq(table, c[0], rand),
+                                        Predicate.not(eq(table, c[1], rand)));
+                        else if (mix.equals("mixed"))
+                                answer[k] = Predicate.and(in(table, c[0], 3, rand),
+                                        Predicate.or(eq(table, c[1], rand), eq(table, c[2], rand)),
+                                        Predicate.not(eq(table, c[3], rand)));
+                        else
+                                throw new IllegalArgumentException("unknown mix: " + mix);
+                }
+                return answer;
+        }
+
+        // 4 random columns, distinct when there are enough columns
+        private static int[] columns(int n, Random rand) {
+                int[] c = new int[Math.max(4, n)];
+                for (int k = 0; k < c.length; ++k)
+                        c[k] = k % n;
+                for (int k = c.length - 1; k > 0; --k) {
+                        int j = rand.nextInt(k + 1);
+                        int t = c[k];
+                        c[k] = c[j];
+                        c[j] = t;
+                }
+                return c;
+        }
+
+        private static Predicate eq(int[][] table, int c, Random rand) {
+                return Predicate.eq(c, table[c][rand.nextInt(table[c].length)]);
+        }
+
+        private static Predicate in(int[][] table, int c, int k, Random rand) {
+                int[] v = new int[k];
+                for (int j = 0; j < k; ++j)
+                        v[j] = table[c][rand.nextInt(table[c].length)];
+                return Predicate.in(c, v);
+        }
+
+        /**
+         * @param rows
+         *                number of rows
+         * @param values
+         *                number of values
+         * @param skew
+         *                Zipf exponent, 0 for uniform values
+         * @param rand
+         *                pseudo-random generator
+         * @return a column of values in [0, values)
+         */
+        public static int[] generate(int rows, int values, double skew,
+                Random rand) {
+                double[] cumulative = new double[values];
+                double total = 0;
+                for (int v = 0; v < values; ++v) {
+                        total += Math.pow(v + 1, -skew);
+                        cumulative[v] = total;
+                }
+                int[] column = new int[rows];
+                for (int r = 0; r < rows; ++r) {
+                        int v = Arrays.binarySearch(cumulative, rand.nextDouble() * total);
+                        column[r] = Math.min(values - 1, v < 0 ? -v - 1 : v);
+                }
+                return column;
+        }
+
+        // sorts the rows of the table on a column
+        private static void sortRows(int[][] table, int column) {
+                int rows = table[column].length;
+                long[] keys = new long[rows];
+                for (int r = 0; r < rows; ++r)
+                        keys[r] = ((long) table[column][r] << 32) | r;
+                Arrays.sort(keys);
+                for (int c = 0; c < table.length; ++c) {
+                        int[] sorted = new int[rows];
+                        for (int r = 0; r < rows; ++r)
+                                sorted[r] = table[c][(int) keys[r]];
+                        table[c] = sorted;
+                }
+        }
+
+        /**
+         * @param file
+         *                CSV file, fields separated by commas, semicolons or
+         *                tabs
+         * @param header
+         *                whether to skip the first line
+         * @param dictionaries
+         *                receives, for each column, the value of each field
+         * @return values of the columns, table[column][row]
+         * @throws IOException
+         *                 if the file cannot be read
+         */
+        public static int[][] load(String file, boolean header,
+                List<Map<String, Integer>> dictionaries) throws IOException {
+                BufferedReader in = new BufferedReader(new FileReader(file));
+                try {
+                        int[][] table = null;
+                        int rows = 0;
+                        String line;
+                        if (header)
+                                in.readLine();
+                        while ((line = in.readLine()) != null) {
+                                if (line.isEmpty() || line.startsWith("#"))
+                                        continue;
+                                String[] fields = line.split("[,;\t]", -1);
+                                if (table == null) {
+                                        table = new int[fields.length][16];
+                                        for (int c = 0; c < fields.length; ++c)
+                                                dictionaries.add(new HashMap<String, Integer>());
+                                } else if (fields.length != table.length)
+                                        throw new IOException("row " + (rows + 1) + " has "
+                                                + fields.length + " fields instead of " + table.length);
+                                if (rows == table[0].length)
+                                        for (int c = 0; c < table.length; ++c)
+                                                table[c] = Arrays.copyOf(table[c], 2 * rows);
+                                for (int c = 0; c < table.length; ++c) {
+                                        Integer v = dictionaries.get(c).get(fields[c]);
+                                        if (v == null) {
+                                                v = dictionaries.get(c).size();
+                                                dictionaries.get(c).put(fields[c], v);
+                                        }
+                                        table[c][rows] = v;
+                                }
+                                ++rows;
+                        }
+                        if (table == null)
+                                throw new IOException("empty table");
+                        for (int c = 0; c < table.length; ++c)
+                                table[c] = Arrays.copyOf(table[c], rows);
+                        return table;
+                } finally {
+                        in.close();
+                }
+        }
+}
@@ -0,0 +1,337 @@
+/*
+ * (c) Samy Chambi and Daniel Lemire
+ */
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import net.sourceforge.sizeof.SizeOf;
+
+/**
+ *
+ * Streaming ingest benchmark: instead of building each bitmap in one shot
+ * from a sorted array, the ids arrive one at a time and are added to an
+ * initially empty bitmap, in batches of growing sizes. Between two batches,
+ * the bitmap being filled is intersected and merged with a fixed bitmap, and
+ * probed with contains, as a server would answer queries while ingesting.
+ *
+ * The ids arrive in increasing order (monotonic), nearly in increasing order
+ * (each id displaced by less than window positions) or in random order. For
+ * every scheme and after every batch, we report the ingest rate of the
+ * batch, the latency of the queries, the median over several samples of
+ * queries operations each, and the size of the bitmap.
+ *
+ * A first pass, on another bitmap, checks the bitmaps and the answers
+ * against a BitSet after every batch, and warms up the JIT. When the
+ * insertions of a scheme lose ids for an arrival order, its answers are
+ * wrong: only its ingest rate is timed, and the reason is reported.
+ *
+ * Usage:
+ *
+ * <pre>
+ * java -cp ... IngestBench [n=100000] [density=0.1] [distribution=uniform] [order=monotonic,nearsorted,random] [window=64] [first=1000] [growth=2] [queries=10] [samples=11] [probes=1000] [seed=0]
+ * </pre>
+ *
+ */
+public class IngestBench {
+
+        /**
+         * arrival orders of the ids
+         */
+        public enum Order {
+                MONOTONIC, NEARSORTED, RANDOM
+        }
+
+        private static int bogus = 0;
+
+        /**
+         * @param args
+         *                command line arguments, see the class documentation
+         */
+        public static void main(final String[] args) {
+                Locale.setDefault(Locale.US);
+                int n = 100000;
+                double density = 0.1;
+                DataGenerator.Distribution distribution = DataGenerator.Distribution.UNIFORM;
+                List<Order> orders = new ArrayList<Order>();
+                int window = 64;
+                int first = 1000;
+                double growth = 2;
+                int queries = 10;
+                int samples = 11;
+                int probes = 1000;
+                long seed = 0;
+                for (String arg : args)
+                        if (arg.startsWith("n="))
+                                n = Integer.parseInt(arg.substring(2));
+                        else if (arg.startsWith("density="))
+                                density = Double.parseDouble(arg.substring(8));
+                        else if (arg.startsWith("distribution="))
+                                distribution = DataGenerator.Distribution.valueOf(arg
+                                        .substring(13).toUpperCase(Locale.US));
+                        else if (arg.startsWith("order="))
+                                for (String o : arg.substring(6).split(","))
+                                        orders.add(Order.valueOf(o.toUpperCase(Locale.US)));
+                        else if (arg.startsWith("window="))
+                                window = Integer.parseInt(arg.substring(7));
+                        else if (arg.startsWith("first="))
+                                first = Integer.parseInt(arg.substring(6));
+                        else if (arg.startsWith("growth="))
+                                growth = Double.parseDouble(arg.substring(7));
+                        else if (arg.startsWith("queries="))
+                                queries = Integer.parseInt(arg.substring(8));
+                        else if (arg.startsWith("samples="))
+                                samples = Integer.parseInt(arg.substring(8));
+                        else if (arg.startsWith("probes="))
+                                probes = Integer.parseInt(arg.substring(7));
+                        else if (arg.startsWith("seed="))
+                                seed = Long.parseLong(arg.substring(5));
+                        else
+                                throw new IllegalArgumentException("unknown argument: " + arg);
+                if (orders.isEmpty())
+                        orders.addAll(Arrays.asList(Order.values()));
+                if (window < 1 || first < 1 || growth < 1 || queries < 1 || samples < 1)
+                        throw new IllegalArgumentException("window, first, queries and samples should be positive, growth at least 1");
+                boolean sizeof = true;
+                try {
+                        SizeOf.setMinSizeToLog(0);
+                        SizeOf.skipStaticField(true);
+                        SizeOf.deepSizeOf(args);
+                } catch (IllegalStateException e) {
+                        sizeof = false;
+                        System.out
+                                .println("# disabling sizeOf, run  -javaagent:lib/SizeOf.jar or equiv. to enable");
+                }
+                DataGenerator gen = new DataGenerator(n, seed);
+                gen.setDistribution(distribution);
+                int[] ids = gen.getRandomArray(density);
+                int[] other = gen.getRandomArray(density);
+                // half the probes are ids, the others are anywhere
+                int universe = Math.max(ids[n - 1], other[n - 1]) + 1;
+                int[] probed = new int[probes];
+                for (int k = 0; k < probes; ++k)
+                        probed[k] = k % 2 == 0 ? ids[gen.rand.nextInt(n)] : gen.rand
+                                .nextInt(universe);
+                int[] ends = batches(n, first, growth);
+                DecimalFormat df = new DecimalFormat("0.000E0");
+                DecimalFormat dfb = new DecimalFormat("000.0");
+                for (Order order : orders) {
+                        int[] arrival = arrange(ids, order, window, gen.rand);
+                        System.out.println("# verifying the answers");
+                        Map<Scheme, String> failures = new EnumMap<Scheme, String>(Scheme.class);
+                        for (Scheme scheme : Scheme.values())
+                                failures.put(scheme, verify(scheme, arrival, ends, other, probed));
+                        System.out.println("### " + order.name().toLowerCase(Locale.US)
+                                + " ingest test: " + n + " ids, " + distribution.name()
+                                        .toLowerCase(Locale.US) + ", density " + density
+                                + (order == Order.NEARSORTED ? ", window " + window : "")
+                                + ", " + ends.length + " batches");
+                        System.out.println("# ids so far, then ingest rate of the batch in ids/s, "
+                                + "then median and/or/contains latencies in ns over " + samples
+                                + " samples, then estimated bytes and bits/int");
+                        if (sizeof)
+                                System.out.println("# For size (last columns), first column is estimated, second is sizeof");
+                        for (Scheme scheme : Scheme.values()) {
+                                System.out.println("### " + scheme);
+                                String failure = failures.get(scheme);
+                                if (failure != null)
+                                        System.out.println("# queries and size not timed, " + failure);
+                                try {
+                                        bench(scheme, arrival, ends, other, probed, queries,
+                                                samples, failure == null, sizeof, df, dfb);
+                                } catch (RuntimeException e) {
+                                        System.out.println("# not timed, " + e);
+                                }
+                        }
+                        System.out.println();
+                }
+                System.out.println("#ignore = " + bogus);
+        }
+
+        /**
+         * @param n
+         *                number of ids
+         * @param first
+         *                size of the first batch
+         * @param growth
+         *                ratio between the sizes of two successive batches
+         * @return the number of ids added after each batch, the last one
+         *         being n
+         */
+        public static int[] batches(int n, int first, double growth) {
+                List<Integer> ends = new ArrayList<Integer>();
+                double size = first;
+                long end = 0;
+                while (end < n) {
+                        end = Math.min(n, end + Math.max(1, (long) size));
+                        ends.add((int) end);
+                        size *= growth;
+                }
+                int[] answer = new int[ends.size()];
+                for (int k = 0; k < answer.length; ++k)
+                        answer[k] = ends.get(k);
+                return answer;
+        }
+
+        /**
+         * @param ids
+         *                sorted ids
+         * @param order
+         *                arrival order
+         * @param window
+         *                maximal displacement of an id in the near-sorted
+         *                order
+         * @param rand
+         *                pseudo-random generator
+         * @return the ids in their order of arrival
+         */
+        public static int[] arrange(int[] ids, Order order, int window,
+                Random rand) {
+                int n = ids.length;
+                int[] answer = ids.clone();
+                if (order == Order.NEARSORTED) {
+                        // sorting on position + noise moves each id by less than window
+                        long[] keys = new long[n];
+                        for (int k = 0; k < n; ++k)
+                                keys[k] = ((long) (k + rand.nextInt(window)) << 32) | k;
+                        Arrays.sort(keys);
+                        for (int k = 0; k < n; ++k)
+                                answer[k] = ids[(int) keys[k]];
+                } else if (order == Order.RANDOM) {
+                        for (int k = n - 1; k > 0; --k) {
+                                int j = rand.nextInt(k + 1);
+                                int t = answer[k];
+                                answer[k] = answer[j];
+                                answer[j] = t;
+                        }
+                }
+                return answer;
+        }
+
+        // null if the scheme ingests the ids and answers correctly, else why
+        // not; the ids are all added in any case, to warm up the insertions
+        private static String verify(Scheme scheme, int[] arrival, int[] ends,
+                int[] other, int[] probed) {
+                Object b = scheme.create();
+                Object q = scheme.build(other);
+                BitSet truth = new BitSet();
+                BitSet qtruth = Main.toBitSet(other);
+                String failure = null;
+                int pos = 0;
+                try {
+                        for (int end : ends) {
+                                for (; pos < end; ++pos) {
+                                        scheme.add(b, arrival[pos]);
+                                        truth.set(arrival[pos]);
+                                }
+                                if (failure == null)
+                                        failure = check(scheme, b, q, truth, qtruth, probed, end);
+                        }
+                } catch (RuntimeException e) {
+                        return e + " after " + pos + " ids";
+                }
+                return failure;
+        }
+
+        private static String check(Scheme scheme, Object b, Object q,
+                BitSet truth, BitSet qtruth, int[] probed, int end) {
+                if (!Arrays.equals(scheme.toArray(b), Scheme.BITSET.toArray(truth)))
+                        return "wrong content after " + end + " ids";
+                BitSet expected = (BitSet) truth.clone();
+                expected.and(qtruth);
+                if (!Arrays.equals(scheme.toArray(scheme.and(b, q)),
+                        Scheme.BITSET.toArray(expected)))
+                        return "wrong and after " + end + " ids";
+                expected = (BitSet) truth.clone();
+                expected.or(qtruth);
+                if (!Arrays.equals(scheme.toArray(scheme.or(b, q)),
+                        Scheme.BITSET.toArray(expected)))
+                        return "wrong or after " + end + " ids";
+                for (int x : probed)
+                        if (scheme.contains(b, x) != truth.get(x))
+                                return "wrong contains(" + x + ") after " + end + " ids";
+                return null;
+        }
+
+        // with correct false, only the ingest rate is timed
+        private static void bench(Scheme scheme, int[] arrival, int[] ends,
+                int[] other, int[] probed, int queries, int samples,
+                boolean correct, boolean sizeof, DecimalFormat df,
+                DecimalFormat dfb) {
+                Object b = scheme.create();
+                Object q = scheme.build(other);
+                long ingest = 0;
+                double querying = 0;
+                long[] ands = new long[samples];
+                long[] ors = new long[samples];
+                long[] containss = new long[samples];
+                int pos = 0;
+                for (int end : ends) {
+                        int batch = end - pos;
+                        long bef = System.nanoTime();
+                        for (; pos < end; ++pos)
+                                scheme.add(b, arrival[pos]);
+                        long aft = System.nanoTime();
+                        ingest += aft - bef;
+                        double rate = batch * 1e9 / (aft - bef);
+                        StringBuilder sb = new StringBuilder();
+                        sb.append(end).append("\t\t").append(df.format(rate));
+                        if (!correct) {
+                                System.out.println(sb.append("\t\t-\t\t-\t\t-\t\t-\t\t-"));
+                                continue;
+                        }
+                        for (int s = 0; s < samples; ++s) {
+                                bef = System.nanoTime();
+                                for (int r = 0; r < queries; ++r)
+                                        if (scheme.isEmpty(scheme.and(b, q)))
+                                                ++bogus;
+                                aft = System.nanoTime();
+                                ands[s] = aft - bef;
+                                bef = System.nanoTime();
+                                for (int r = 0; r < queries; ++r)
+                                        if (scheme.isEmpty(scheme.or(b, q)))
+                                                ++bogus;
+                                aft = System.nanoTime();
+                                ors[s] = aft - bef;
+                                bef = System.nanoTime();
+                                for (int x : probed)
+                                        if (scheme.contains(b, x))
+                                                ++bogus;
+                                aft = System.nanoTime();
+                                containss[s] = aft - bef;
+                        }
+                        // as if the queries were answered once per batch
+                        querying += median(ands) + median(ors) + median(containss);
+                        double and = median(ands) / queries;
+                        double or = median(ors) / queries;
+                        double contains = median(containss) / probed.length;
+                        long bytes = scheme.sizeInBytes(b);
+                        sb.append("\t\t").append(df.format(and)).append("\t\t")
+                                .append(df.format(or)).append("\t\t")
+                                .append(df.format(contains)).append("\t\t")
+                                .append(bytes).append("\t\t")
+                                .append(dfb.format(bytes * 8.0 / end));
+                        if (sizeof)
+                                sb.append("\t").append(dfb.format(SizeOf.deepSizeOf(b) * 8.0 / end));
+                        System.out.println(sb);
+                }
+                System.out.println("# sustained ingest rate: "
+                        + df.format(pos * 1e9 / ingest) + " ids/s"
+                        + (correct ? ", " + df.format(100.0 * querying / (ingest + querying))
+                                + "% of the time spent in queries" : ""));
+        }
+
+        // sorts the times
+        private static double median(long[] times) {
+                Arrays.sort(times);
+                int n = times.length;
+                return n % 2 == 1 ? times[n / 2] : (times[n / 2 - 1] + times[n / 2]) / 2.0;
+        }
+}
@@ -0,0 +1,22 @@
+/*
+ * (c) Samy Chambi and Daniel Lemire
+ */
+
+/**
+ *
+ * Iterator over primitive integers, in the spirit of the one of
+ * RoaringBitmap, used to walk the hierarchical bitmaps without boxing.
+ *
+ */
+public interface IntIterator {
+
+        /**
+         * @return whether there is another integer
+         */
+        boolean hasNext();
+
+        /**
+         * @return the next integer
+         */
+        int next();
+}
@@ -0,0 +1,203 @@
+/*
+ * (c) Samy Chambi and Daniel Lemire
+ */
+
+/**
+ *
+ * Operations on LazyHierarchiqueBitmap that are not provided by the
+ * LazyHierarchiqueBitmap library. They only rely on the public accessors of
+ * LazyNode, so that the library jar does not need to be rebuilt.
+ *
+ * Like LazyNode.OR, subtrees are shared rather than copied whenever one side
+ * is empty: they are flagged as shared and LazyNode.push clones them before
+ * any later insertion.
+ *
+ * A LazyHierarchiqueBitmap is a binary trie: the node at depth k (the root
+ * being at depth 0) holds the k-th most significant bit of the integers stored
+ * below it, and each integer is a path ending on a leaf at depth 32. Results
+ * of LazyNode.AND can contain dead branches (internal nodes without any leaf
+ * below them), they are ignored here.
+ *
+ */
+public final class LazyHierarchiqueBitmapOps {
+
+        /**
+         * depth of the leaves, one level per bit of an integer
+         */
+        public static final int LEAF_DEPTH = 32;
+
+        private LazyHierarchiqueBitmapOps() {
+        }
+
+        /**
+         * @param b1
+         *                first bitmap
+         * @param b2
+         *                second bitmap
+         * @return a new bitmap holding the integers present in exactly one of
+         *         b1 and b2
+         */
+        public static LazyHierarchiqueBitmap XOR(LazyHierarchiqueBitmap b1,
+                LazyHierarchiqueBitmap b2) {
+                LazyHierarchiqueBitmap res = new LazyHierarchiqueBitmap();
+                res.setRoot(XOR(b1.getRoot(), b2.getRoot()));
+                return res;
+        }
+
+        /**
+         * @param b1
+         *                first bitmap
+         * @param b2
+         *                second bitmap
+         * @return a new bitmap holding the integers of b1 that are not in b2
+         */
+        public static LazyHierarchiqueBitmap ANDNOT(LazyHierarchiqueBitmap b1,
+                LazyHierarchiqueBitmap b2) {
+                LazyHierarchiqueBitmap res = new LazyHierarchiqueBitmap();
+                res.setRoot(ANDNOT(b1.getRoot(), b2.getRoot()));
+                return res;
+        }
+
+        /**
+         * Symmetric difference of two roots. Subtrees present on one side
+         * only are shared with the result.
+         *
+         * @param n1
+         *                root of the first trie
+         * @param n2
+         *                root of the second trie
+         * @return the root of a new trie
+         */
+        public static LazyNode XOR(LazyNode n1, LazyNode n2) {
+                LazyNode res = new LazyNode(n1.getValue());
+                res.setLeft(xorChild(n1.getLeft(), n2.getLeft(), 1));
+                res.setRight(xorChild(n1.getRight(), n2.getRight(), 1));
+                return res;
+        }
+
+        /**
+         * Difference of two roots. Subtrees of n1 that have no counterpart in
+         * n2 are shared with the result.
+         *
+         * @param n1
+         *                root of the first trie
+         * @param n2
+         *                root of the second trie
+         * @return the root of a new trie
+         */
+        public static LazyNode ANDNOT(LazyNode n1, LazyNode n2) {
+                LazyNode res = new LazyNode(n1.getValue());
+                res.setLeft(andNotChild(n1.getLeft(), n2.getLeft(), 1));
+                res.setRight(andNotChild(n1.getRight(), n2.getRight(), 1));
+                return res;
+        }
+
+        private static LazyNode xorChild(LazyNode c1, LazyNode c2, int depth) {
+                if (c1 == null)
+                        return c2 == null ? null : share(c2);
+                if (c2 == null)
+                        return share(c1);
+                if (depth == LEAF_DEPTH)
+                        return null;
+                LazyNode left = xorChild(c1.getLeft(), c2.getLeft(), depth + 1);
+                LazyNode right = xorChild(c1.getRight(), c2.getRight(),
+                        depth + 1);
+                if (left == null && right == null)
+                        return null;
+                LazyNode res = new LazyNode(c1.getValue());
+                res.setLeft(left);
+                res.setRight(right);
+                return res;
+        }
+
+        private static LazyNode andNotChild(LazyNode c1, LazyNode c2,
+                int depth) {
+                if (c1 == null)
+                        return null;
+                if (c2 == null)
+                        return share(c1);
+                if (depth == LEAF_DEPTH)
+                        return null;
+                LazyNode left = andNotChild(c1.getLeft(), c2.getLeft(),
+                        depth + 1);
+                LazyNode right = andNotChild(c1.getRight(), c2.getRight(),
+                        depth + 1);
+                if (left == null && right == null)
+                        return null;
+                LazyNode res = new LazyNode(c1.getValue());
+                res.setLeft(left);
+                res.setRight(right);
+                return res;
+        }
+
+        private static LazyNode share(LazyNode n) {
+                n.setShared(true);
+                return n;
+        }
+
+        /**
+         * Exact emptiness test: unlike a test on the children of the root, it
+         * ignores the dead branches left by LazyNode.AND, and stops at the
+         * first leaf.
+         *
+         * @param b
+         *                a bitmap
+         * @return whether b holds no integer
+         */
+        public static boolean isEmpty(LazyHierarchiqueBitmap b) {
+                return !hasLeaf(b.getRoot(), 0);
+        }
+
+        private static boolean hasLeaf(LazyNode n, int depth) {
+                if (depth == LEAF_DEPTH)
+                        return true;
+                return (n.getLeft() != null && hasLeaf(n.getLeft(), depth + 1))
+                        || (n.getRight() != null && hasLeaf(n.getRight(), depth + 1));
+        }
+
+        /**
+         * @param b
+         *                a bitmap
+         * @return the number of integers stored in b (length() counts nodes)
+         */
+        public static int cardinality(LazyHierarchiqueBitmap b) {
+                return cardinality(b.getRoot(), 0);
+        }
+
+        private static int cardinality(LazyNode n, int depth) {
+                if (depth == LEAF_DEPTH)
+                        return 1;
+                int card = 0;
+                if (n.getLeft() != null)
+                        card += cardinality(n.getLeft(), depth + 1);
+                if (n.getRight() != null)
+                        card += cardinality(n.getRight(), depth + 1);
+                return card;
+        }
+
+        /**
+         * @param b
+         *                a bitmap
+         * @return the integers stored in b, in unsigned increasing order
+         */
+        public static int[] toArray(LazyHierarchiqueBitmap b) {
+                int[] answer = new int[cardinality(b)];
+                fill(b.getRoot(), 0, 0, answer, 0);
+                return answer;
+        }
+
+        private static int fill(LazyNode n, int prefix, int depth, int[] answer,
+                int pos) {
+                if (depth == LEAF_DEPTH) {
+                        answer[pos] = prefix;
+                        return pos + 1;
+                }
+                if (n.getLeft() != null)
+                        pos = fill(n.getLeft(), prefix, depth + 1, answer, pos);
+                if (n.getRight() != null)
+                        pos = fill(n.getRight(),
+                                prefix | (1 << (LEAF_DEPTH - 1 - depth)),
+                                depth + 1, answer, pos);
+                return pos;
+        }
+}
@@ -0,0 +1,690 @@
+/*
+ * (c) Samy Chambi and Daniel Lemire
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ *
+ * Operations on LazyVarByteHierarchBmp that are not provided by the
+ * LazyHierarBmpVarByte library. They only rely on the public accessors of
+ * LazyVarByteNode, so that the library jar does not need to be rebuilt.
+ *
+ * A LazyVarByteHierarchBmp is a prefix tree over the 4 big-endian bytes of
+ * the integers: each node holds a variable number of bytes and each integer
+ * is a path from the root (whose value is null) to a leaf. Two bitmaps
+ * holding the same integers are not always split at the same byte
+ * positions, and siblings can start with the same byte. The operations below
+ * thus walk both trees one byte at a time, through cursors pointing inside
+ * the node values, instead of matching whole children.
+ *
+ * Unlike LazyVarByteNode.OR, a subtree present on one side only is copied
+ * into the result: LazyVarByteNode.addChild modifies the nodes in place
+ * whatever their shared flag, so that adding to a result would otherwise
+ * change the operands. Only the children of FULL_CHILDS are shared.
+ *
+ * Ranges are half-open intervals [lo, hi) of unsigned integers, given as
+ * longs with 0 &lt;= lo &lt;= hi &lt;= 2^32. A prefix fully covered by a range
+ * added through addRange gets the canonical children of FULL_CHILDS, which
+ * are shared by all bitmaps, so that adding, removing or counting it does not
+ * descend into it. LazyVarByteNode.addChild replaces (rather than modifies)
+ * the array of children of a node before inserting, so these arrays are
+ * never altered.
+ *
+ */
+public final class LazyVarByteHierarchBmpOps {
+
+        /**
+         * number of bytes of an integer, that is the depth of the leaves
+         */
+        public static final int INT_BYTES = 4;
+
+        /**
+         * FULL_CHILDS[h] are the 256 children of a node holding every integer
+         * of its interval when h bytes remain below it; each of them holds one
+         * byte and has FULL_CHILDS[h - 1] as children.
+         */
+        private static final LazyVarByteNode[][] FULL_CHILDS =
+                new LazyVarByteNode[INT_BYTES][];
+
+        static {
+                for (int h = 1; h < INT_BYTES; ++h) {
+                        FULL_CHILDS[h] = new LazyVarByteNode[256];
+                        for (int k = 0; k < 256; ++k) {
+                                LazyVarByteNode n = new LazyVarByteNode(
+                                        new byte[] { (byte) k });
+                                n.setChilds(FULL_CHILDS[h - 1]);
+                                n.setShared(true);
+                                FULL_CHILDS[h][k] = n;
+                        }
+                }
+        }
+
+        private LazyVarByteHierarchBmpOps() {
+        }
+
+        /**
+         * Intersection walking both tries byte by byte. Unlike
+         * LazyVarByteHierarchBmp.AND, it does not depend on how the two tries
+         * happen to split their prefixes.
+         *
+         * @param b1
+         *                first bitmap
+         * @param b2
+         *                second bitmap
+         * @return a new bitmap holding the integers present in both b1 and b2
+         */
+        public static LazyVarByteHierarchBmp AND(LazyVarByteHierarchBmp b1,
+                LazyVarByteHierarchBmp b2) {
+                return new LazyVarByteHierarchBmp(AND(b1.getRoot(),
+                        b2.getRoot()));
+        }
+
+        /**
+         * Union copying the subtrees present in a single bitmap. Unlike
+         * LazyVarByteHierarchBmp.OR, it does not depend on how the two tries
+         * happen to split their prefixes.
+         *
+         * @param b1
+         *                first bitmap
+         * @param b2
+         *                second bitmap
+         * @return a new bitmap holding the integers present in b1 or b2
+         */
+        public static LazyVarByteHierarchBmp OR(LazyVarByteHierarchBmp b1,
+                LazyVarByteHierarchBmp b2) {
+                return new LazyVarByteHierarchBmp(OR(b1.getRoot(),
+                        b2.getRoot()));
+        }
+
+        /**
+         * @param b1
+         *                first bitmap
+         * @param b2
+         *                second bitmap
+         * @return a new bitmap holding the integers present in exactly one of
+         *         b1 and b2
+         */
+        public static LazyVarByteHierarchBmp XOR(LazyVarByteHierarchBmp b1,
+                LazyVarByteHierarchBmp b2) {
+                return new LazyVarByteHierarchBmp(XOR(b1.getRoot(),
+                        b2.getRoot()));
+        }
+
+        /**
+         * @param b1
+         *                first bitmap
+         * @param b2
+         *                second bitmap
+         * @return a new bitmap holding the integers of b1 that are not in b2
+         */
+        public static LazyVarByteHierarchBmp ANDNOT(LazyVarByteHierarchBmp b1,
+                LazyVarByteHierarchBmp b2) {
+                return new LazyVarByteHierarchBmp(ANDNOT(b1.getRoot(),
+                        b2.getRoot()));
+        }
+
+        /**
+         * @param n1
+         *                root of the first tree
+         * @param n2
+         *                root of the second tree
+         * @return the root of a new tree holding the intersection
+         */
+        public static LazyVarByteNode AND(LazyVarByteNode n1, LazyVarByteNode n2) {
+                LazyVarByteNode res = new LazyVarByteNode(n1.getValue());
+                res.setChilds(merge(children(n1), children(n2), 0, false, false, true));
+                return res;
+        }
+
+        /**
+         * @param n1
+         *                root of the first tree
+         * @param n2
+         *                root of the second tree
+         * @return the root of a new tree holding the union
+         */
+        public static LazyVarByteNode OR(LazyVarByteNode n1, LazyVarByteNode n2) {
+                LazyVarByteNode res = new LazyVarByteNode(n1.getValue());
+                res.setChilds(merge(children(n1), children(n2), 0, true, true, true));
+                return res;
+        }
+
+        /**
+         * @param n1
+         *                root of the first tree
+         * @param n2
+         *                root of the second tree
+         * @return the root of a new tree holding the symmetric difference
+         */
+        public static LazyVarByteNode XOR(LazyVarByteNode n1, LazyVarByteNode n2) {
+                LazyVarByteNode res = new LazyVarByteNode(n1.getValue());
+                res.setChilds(merge(children(n1), children(n2), 0, true, true, false));
+                return res;
+        }
+
+        /**
+         * @param n1
+         *                root of the first tree
+         * @param n2
+         *                root of the second tree
+         * @return the root of a new tree holding the integers of n1 that are
+         *         not in n2
+         */
+        public static LazyVarByteNode ANDNOT(LazyVarByteNode n1,
+                LazyVarByteNode n2) {
+                LazyVarByteNode res = new LazyVarByteNode(n1.getValue());
+                res.setChilds(merge(children(n1), children(n2), 0, true, false, false));
+                return res;
+        }
+
+        /**
+         * Position inside the value of a node. When offset reaches the end of
+         * the value of a leaf, the integer is complete.
+         */
+        static final class Cursor {
+                final LazyVarByteNode node;
+                final int offset;
+
+                Cursor(LazyVarByteNode node, int offset) {
+                        this.node = node;
+                        this.offset = offset;
+                }
+
+                boolean atEnd() {
+                        return offset == node.getValue().length;
+                }
+
+                int nextByte() {
+                        return node.getValue()[offset] & 0xFF;
+                }
+        }
+
+        private static final Comparator<Cursor> BY_NEXT_BYTE = new Comparator<Cursor>() {
+                @Override
+                public int compare(Cursor c1, Cursor c2) {
+                        return c1.nextByte() - c2.nextByte();
+                }
+        };
+
+        static List<Cursor> children(LazyVarByteNode n) {
+                List<Cursor> answer = new ArrayList<Cursor>();
+                addChildren(n, answer);
+                return answer;
+        }
+
+        private static void addChildren(LazyVarByteNode n, List<Cursor> out) {
+                if (n.getChilds() == null)
+                        return;
+                for (LazyVarByteNode c : n.getChilds())
+                        add(new Cursor(c, 0), out);
+        }
+
+        // cursors at the end of an internal node are replaced by its children
+        private static void add(Cursor c, List<Cursor> out) {
+                if (c.atEnd() && c.node.getChilds() != null)
+                        addChildren(c.node, out);
+                else
+                        out.add(c);
+        }
+
+        private static List<Cursor> advanceAll(List<Cursor> cursors) {
+                List<Cursor> answer = new ArrayList<Cursor>(cursors.size());
+                for (Cursor c : cursors)
+                        add(new Cursor(c.node, c.offset + 1), answer);
+                return answer;
+        }
+
+        /**
+         * Merges two sets of cursors that all stand before the byte at
+         * position depth.
+         *
+         * @return the children of the resulting node, null if it is empty
+         */
+        private static LazyVarByteNode[] merge(List<Cursor> c1, List<Cursor> c2,
+                int depth, boolean keepFirst, boolean keepSecond, boolean keepBoth) {
+                dropEnded(c1);
+                dropEnded(c2);
+                Collections.sort(c1, BY_NEXT_BYTE);
+                Collections.sort(c2, BY_NEXT_BYTE);
+                List<LazyVarByteNode> answer = new ArrayList<LazyVarByteNode>();
+                int i1 = 0, i2 = 0;
+                while (i1 < c1.size() || i2 < c2.size()) {
+                        int b1 = i1 < c1.size() ? c1.get(i1).nextByte() : 256;
+                        int b2 = i2 < c2.size() ? c2.get(i2).nextByte() : 256;
+                        int b = Math.min(b1, b2);
+                        int e1 = i1, e2 = i2;
+                        while (e1 < c1.size() && c1.get(e1).nextByte() == b)
+                                ++e1;
+                        while (e2 < c2.size() && c2.get(e2).nextByte() == b)
+                                ++e2;
+                        List<Cursor> g1 = c1.subList(i1, e1);
+                        List<Cursor> g2 = c2.subList(i2, e2);
+                        LazyVarByteNode child = null;
+                        if (g2.isEmpty()) {
+                                if (keepFirst)
+                                        child = g1.size() == 1 ? copy(g1.get(0))
+                                                : descend(g1, g2, b, depth,
+                                                        keepFirst, keepSecond, keepBoth);
+                        } else if (g1.isEmpty()) {
+                                if (keepSecond)
+                                        child = g2.size() == 1 ? copy(g2.get(0))
+                                                : descend(g1, g2, b, depth,
+                                                        keepFirst, keepSecond, keepBoth);
+                        } else
+                                child = descend(g1, g2, b, depth, keepFirst,
+                                        keepSecond, keepBoth);
+                        if (child != null)
+                                answer.add(child);
+                        i1 = e1;
+                        i2 = e2;
+                }
+                if (answer.isEmpty())
+                        return null;
+                return answer.toArray(new LazyVarByteNode[answer.size()]);
+        }
+
+        private static LazyVarByteNode descend(List<Cursor> g1, List<Cursor> g2,
+                int b, int depth, boolean keepFirst, boolean keepSecond,
+                boolean keepBoth) {
+                List<Cursor> next1 = advanceAll(g1);
+                List<Cursor> next2 = advanceAll(g2);
+                LazyVarByteNode res = new LazyVarByteNode(new byte[] { (byte) b });
+                if (depth + 1 == INT_BYTES) {
+                        boolean in1 = !next1.isEmpty();
+                        boolean in2 = !next2.isEmpty();
+                        if (in1 && in2)
+                                return keepBoth ? res : null;
+                        return (in1 ? keepFirst : keepSecond) ? res : null;
+                }
+                LazyVarByteNode[] childs = merge(next1, next2, depth + 1,
+                        keepFirst, keepSecond, keepBoth);
+                if (childs == null)
+                        return null;
+                res.setChilds(childs);
+                return res;
+        }
+
+        // a leaf ending before the last byte does not hold any integer
+        private static void dropEnded(List<Cursor> cursors) {
+                for (int k = cursors.size() - 1; k >= 0; --k)
+                        if (cursors.get(k).atEnd())
+                                cursors.remove(k);
+        }
+
+        // the subtree of a cursor, copied from the cursor position
+        private static LazyVarByteNode copy(Cursor c) {
+                byte[] value = c.node.getValue();
+                LazyVarByteNode res = new LazyVarByteNode(Arrays.copyOfRange(
+                        value, c.offset, value.length));
+                res.setChilds(copy(c.node.getChilds()));
+                return res;
+        }
+
+        private static LazyVarByteNode[] copy(LazyVarByteNode[] childs) {
+                if (childs == null)
+                        return null;
+                for (int h = 1; h < INT_BYTES; ++h)
+                        if (childs == FULL_CHILDS[h])
+                                return childs;
+                LazyVarByteNode[] answer = new LazyVarByteNode[childs.length];
+                for (int k = 0; k < childs.length; ++k)
+                        answer[k] = copy(new Cursor(childs[k], 0));
+                return answer;
+        }
+
+        /**
+         * @param b
+         *                a bitmap
+         * @return the number of integers stored in b (length() counts nodes),
+         *         up to 2^32 after addRange
+         */
+        public static long cardinality(LazyVarByteHierarchBmp b) {
+                return rangeCardinality(b, 0, 1L << (8 * INT_BYTES));
+        }
+
+        /**
+         * Exact emptiness test: leaves ending before the last byte do not
+         * count, and the walk stops at the first integer.
+         *
+         * @param b
+         *                a bitmap
+         * @return whether b holds no integer
+         */
+        public static boolean isEmpty(LazyVarByteHierarchBmp b) {
+                return !iterator(b, 0, 1L << (8 * INT_BYTES)).hasNext();
+        }
+
+        // number of integers below the node n whose value starts at depth
+        private static long count(LazyVarByteNode n, int depth) {
+                int end = depth + n.getValue().length;
+                LazyVarByteNode[] childs = n.getChilds();
+                if (childs == null)
+                        return end == INT_BYTES ? 1 : 0;
+                if (end >= INT_BYTES)
+                        return 0;
+                if (end > 0 && childs == FULL_CHILDS[INT_BYTES - end])
+                        return 1L << (8 * (INT_BYTES - end));
+                long card = 0;
+                for (LazyVarByteNode c : childs)
+                        card += count(c, end);
+                return card;
+        }
+
+        // interval covered by a byte at position depth
+        private static long span(int depth) {
+                return 1L << (8 * (INT_BYTES - depth - 1));
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static List<Cursor>[] byNextByte(List<Cursor> cursors) {
+                List<Cursor>[] buckets = new List[256];
+                for (Cursor c : cursors) {
+                        // a leaf ending before the last byte does not hold any
+                        // integer
+                        if (c.atEnd())
+                                continue;
+                        int b = c.nextByte();
+                        if (buckets[b] == null)
+                                buckets[b] = new ArrayList<Cursor>(1);
+                        buckets[b].add(c);
+                }
+                return buckets;
+        }
+
+        private static void checkRange(long lo, long hi) {
+                if ((lo < 0) || (lo > hi) || (hi > (1L << (8 * INT_BYTES))))
+                        throw new IllegalArgumentException(
+                                "range should be within [0, 2^32]");
+        }
+
+        /**
+         * @param b
+         *                a bitmap
+         * @param lo
+         *                first integer of the range
+         * @param hi
+         *                end of the range (excluded)
+         * @return the number of integers of b within [lo, hi)
+         */
+        public static long rangeCardinality(LazyVarByteHierarchBmp b, long lo,
+                long hi) {
+                checkRange(lo, hi);
+                if (lo == hi)
+                        return 0;
+                return rangeCardinality(children(b.getRoot()), 0, 0, lo, hi);
+        }
+
+        // the cursors stand before the byte at position depth, and the
+        // integers below them lie within [base, base + 256 * span(depth))
+        private static long rangeCardinality(List<Cursor> cursors, int depth,
+                long base, long lo, long hi) {
+                final long span = span(depth);
+                List<Cursor>[] buckets = byNextByte(cursors);
+                long card = 0;
+                for (int b = 0; b < 256; ++b) {
+                        long start = base + b * span;
+                        if (buckets[b] == null || start >= hi
+                                || start + span <= lo)
+                                continue;
+                        if (depth + 1 == INT_BYTES)
+                                ++card;
+                        else if (lo <= start && start + span <= hi
+                                && buckets[b].size() == 1) {
+                                Cursor c = buckets[b].get(0);
+                                card += count(c.node, depth - c.offset);
+                        } else
+                                card += rangeCardinality(advanceAll(buckets[b]),
+                                        depth + 1, start, lo, hi);
+                }
+                return card;
+        }
+
+        /**
+         * Adds all the integers of [lo, hi) to b.
+         *
+         * @param b
+         *                a bitmap
+         * @param lo
+         *                first integer of the range
+         * @param hi
+         *                end of the range (excluded)
+         */
+        public static void addRange(LazyVarByteHierarchBmp b, long lo, long hi) {
+                checkRange(lo, hi);
+                if (lo < hi)
+                        b.getRoot().setChilds(toChilds(updateRange(
+                                children(b.getRoot()), 0, 0, lo, hi, true)));
+        }
+
+        /**
+         * Removes all the integers of [lo, hi) from b.
+         *
+         * @param b
+         *                a bitmap
+         * @param lo
+         *                first integer of the range
+         * @param hi
+         *                end of the range (excluded)
+         */
+        public static void removeRange(LazyVarByteHierarchBmp b, long lo,
+                long hi) {
+                checkRange(lo, hi);
+                if (lo < hi)
+                        b.getRoot().setChilds(toChilds(updateRange(
+                                children(b.getRoot()), 0, 0, lo, hi, false)));
+        }
+
+        /**
+         * Rebuilds the children standing before the byte at position depth.
+         * Children whose first byte is outside of the range are kept, those
+         * fully covered are dropped (and replaced by a full node when adding),
+         * and the at most two partially covered bytes are rebuilt as one node
+         * each.
+         */
+        private static List<LazyVarByteNode> updateRange(List<Cursor> cursors,
+                int depth, long base, long lo, long hi, boolean add) {
+                final long span = span(depth);
+                final int first = (int) ((Math.max(lo, base) - base) / span);
+                final int last = (int) ((Math.min(hi, base + 256 * span) - 1
+                        - base) / span);
+                List<LazyVarByteNode> answer = new ArrayList<LazyVarByteNode>();
+                List<Cursor> atFirst = new ArrayList<Cursor>();
+                List<Cursor> atLast = new ArrayList<Cursor>();
+                for (Cursor c : cursors) {
+                        if (c.atEnd())
+                                continue;
+                        int b = c.nextByte();
+                        if (b < first || b > last)
+                                answer.add(detach(c));
+                        else if (b == first)
+                                atFirst.add(c);
+                        else if (b == last)
+                                atLast.add(c);
+                }
+                for (int b = first; b <= last; ++b) {
+                        long start = base + b * span;
+                        if (lo <= start && start + span <= hi) {
+                                if (add)
+                                        answer.add(fullNode(b, depth));
+                                continue;
+                        }
+                        List<Cursor> g = b == first ? atFirst : atLast;
+                        if (!add && g.isEmpty())
+                                continue;
+                        List<LazyVarByteNode> childs = updateRange(
+                                advanceAll(g), depth + 1, start, lo, hi, add);
+                        if (childs.isEmpty())
+                                continue;
+                        LazyVarByteNode n = new LazyVarByteNode(
+                                new byte[] { (byte) b });
+                        n.setChilds(toChilds(childs));
+                        answer.add(n);
+                }
+                // same order as the one LazyVarByteNode.addChild maintains
+                Collections.sort(answer);
+                return answer;
+        }
+
+        private static LazyVarByteNode fullNode(int b, int depth) {
+                LazyVarByteNode n = new LazyVarByteNode(new byte[] { (byte) b });
+                if (depth + 1 < INT_BYTES)
+                        n.setChilds(FULL_CHILDS[INT_BYTES - depth - 1]);
+                return n;
+        }
+
+        // the subtree of a cursor, as a node starting at the cursor position
+        private static LazyVarByteNode detach(Cursor c) {
+                if (c.offset == 0)
+                        return c.node;
+                byte[] value = c.node.getValue();
+                LazyVarByteNode res = new LazyVarByteNode(Arrays.copyOfRange(
+                        value, c.offset, value.length));
+                res.setChilds(c.node.getChilds());
+                return res;
+        }
+
+        private static LazyVarByteNode[] toChilds(List<LazyVarByteNode> nodes) {
+                if (nodes.isEmpty())
+                        return null;
+                return nodes.toArray(new LazyVarByteNode[nodes.size()]);
+        }
+
+        /**
+         * @param b
+         *                a bitmap
+         * @param lo
+         *                first integer of the range
+         * @param hi
+         *                end of the range (excluded)
+         * @return an iterator over the integers of b within [lo, hi), in
+         *         unsigned increasing order
+         */
+        public static IntIterator iterator(LazyVarByteHierarchBmp b, long lo,
+                long hi) {
+                checkRange(lo, hi);
+                return new RangeIterator(b.getRoot(), lo, hi);
+        }
+
+        /**
+         * Walks the tree one byte at a time, grouping the cursors by byte so
+         * that the integers come out sorted and only once.
+         */
+        private static final class RangeIterator implements IntIterator {
+                private final List<Cursor>[][] buckets;
+                private final int[] positions = new int[INT_BYTES];
+                private final long[] bases = new long[INT_BYTES];
+                private final long lo, hi;
+                private int depth;
+                private boolean hasNext;
+                private int current;
+
+                @SuppressWarnings({"unchecked", "rawtypes"})
+                RangeIterator(LazyVarByteNode root, long lo, long hi) {
+                        this.lo = lo;
+                        this.hi = hi;
+                        buckets = new List[INT_BYTES][];
+                        buckets[0] = byNextByte(children(root));
+                        depth = lo < hi ? 0 : -1;
+                        advance();
+                }
+
+                private void advance() {
+                        while (depth >= 0) {
+                                final long span = span(depth);
+                                int b = positions[depth]++;
+                                long start = bases[depth] + b * span;
+                                if (b == 256 || start >= hi) {
+                                        buckets[depth] = null;
+                                        --depth;
+                                        continue;
+                                }
+                                List<Cursor> g = buckets[depth][b];
+                                if (g == null || start + span <= lo)
+                                        continue;
+                                if (depth + 1 == INT_BYTES) {
+                                        current = (int) start;
+                                        hasNext = true;
+                                        return;
+                                }
+                                ++depth;
+                                buckets[depth] = byNextByte(advanceAll(g));
+                                positions[depth] = 0;
+                                bases[depth] = start;
+                        }
+                        hasNext = false;
+                }
+
+                @Override
+                public boolean hasNext() {
+                        return hasNext;
+                }
+
+                @Override
+                public int next() {
+                        if (!hasNext)
+                                throw new NoSuchElementException();
+                        int answer = current;
+                        advance();
+                        return answer;
+                }
+        }
+
+        /**
+         * @param b
+         *                a bitmap
+         * @return the integers stored in b, in unsigned increasing order
+         * @throws IllegalStateException
+         *                 if b holds too many integers for an array
+         */
+        public static int[] toArray(LazyVarByteHierarchBmp b) {
+                long total = cardinality(b);
+                if (total > Integer.MAX_VALUE)
+                        throw new IllegalStateException(total
+                                + " integers do not fit in an array");
+                int[] buffer = new int[16];
+                int card = 0;
+                // explicit stack of (node, prefix, number of prefix bytes)
+                List<LazyVarByteNode> nodes = new ArrayList<LazyVarByteNode>();
+                List<int[]> states = new ArrayList<int[]>();
+                nodes.add(b.getRoot());
+                states.add(new int[] { 0, 0 });
+                while (!nodes.isEmpty()) {
+                        LazyVarByteNode n = nodes.remove(nodes.size() - 1);
+                        int[] state = states.remove(states.size() - 1);
+                        int prefix = state[0], len = state[1];
+                        byte[] value = n.getValue();
+                        if (value != null)
+                                for (int k = 0; k < value.length
+                                        && len < INT_BYTES; ++k, ++len)
+                                        prefix = (prefix << 8) | (value[k] & 0xFF);
+                        if (n.getChilds() == null) {
+                                if (len != INT_BYTES)
+                                        continue;
+                                if (card == buffer.length)
+                                        buffer = Arrays.copyOf(buffer, 2 * card);
+                                buffer[card++] = prefix;
+                        } else
+                                for (LazyVarByteNode c : n.getChilds()) {
+                                        nodes.add(c);
+                                        states.add(new int[] { prefix, len });
+                                }
+                }
+                // children are not always sorted and may repeat an integer
+                for (int k = 0; k < card; ++k)
+                        buffer[k] ^= Integer.MIN_VALUE;
+                Arrays.sort(buffer, 0, card);
+                int size = 0;
+                for (int k = 0; k < card; ++k)
+                        if (size == 0 || buffer[k] != buffer[size - 1])
+                                buffer[size++] = buffer[k];
+                for (int k = 0; k < size; ++k)
+                        buffer[k] ^= Integer.MIN_VALUE;
+                return Arrays.copyOf(buffer, size);
+        }
+}
@@ -2,10 +2,16 @@
  * (c) Samy Chambi and Daniel Lemire
  */
 
+import java.io.File;
+import java.io.IOException;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
+import java.util.EnumMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
 
 import org.roaringbitmap.RoaringBitmap;
 import org.roaringbitmap.ArrayContainer;
@@ -30,8 +36,10 @@ import it.uniroma3.mat.extendedset.intset.ConciseSet;
  * of the density.
  * 
  * 
- * Time measurement are expressed in nanoseconds. Each experiment is performed
- * 100 times, and the average reported.
+ * Time measurement are expressed in nanoseconds. Each experiment is repeated,
+ * after a warmup, until the 95% confidence intervals of its timings are within
+ * the target precision or its time budget is spent (see RunController), and
+ * the average reported.
  * 
  * @author Daniel Lemire
  * 
@@ -39,6 +47,19 @@ import it.uniroma3.mat.extendedset.intset.ConciseSet;
 public class Main {
 
 	 	private static int bogus = 0;
+
+        /**
+         * number of iterations of the correctness pass, each on new random
+         * data, for every threshold and density (40 data sets per density);
+         * on sparse data, building a LazyVB bitmap already takes seconds. The
+         * timed pass is run by a RunController, which does its own warmup.
+         */
+        public static final int VERIFY_TIMES = 10;
+
+        /**
+         * maximal number of integers read at once from a dataset file
+         */
+        public static final int FILE_BATCH = 1 << 16;
 	
         /**
          * @param a
@@ -90,9 +111,34 @@ public class Main {
 
         /**
          * @param args
-         *                command line arguments
+         *                command line arguments: the distributions to
+         *                benchmark (uniform, zipfian, clustered, markov,
+         *                powerlaw; uniform and zipfian by default),
+         *                optionally followed by seed=... for reproducible data,
+         *                precision=... (relative half-width of the confidence
+         *                intervals, 0.02 by default), budget=... (seconds per
+         *                row, 10 by default),
+         *                or file=... (with format=text or format=binary when
+         *                the extension is not enough) to benchmark the lists
+         *                of a dataset file instead; "scaling" followed by the
+         *                arguments of ScalingBench runs the scaling benchmark,
+         *                "index" followed by those of IndexBench the bitmap
+         *                index benchmark, and "ingest" followed by those of
+         *                IngestBench the streaming ingest benchmark
          */
         public static void main(final String[] args) {
+                if (args.length > 0 && args[0].equals("scaling")) {
+                        ScalingBench.main(Arrays.copyOfRange(args, 1, args.length));
+                        return;
+                }
+                if (args.length > 0 && args[0].equals("index")) {
+                        IndexBench.main(Arrays.copyOfRange(args, 1, args.length));
+                        return;
+                }
+                if (args.length > 0 && args[0].equals("ingest")) {
+                        IngestBench.main(Arrays.copyOfRange(args, 1, args.length));
+                        return;
+                }
                 Locale.setDefault(Locale.US);
                 System.out
                         .println("# This benchmark emulates what Colantonio and Di Pietro,");
@@ -122,17 +168,54 @@ public class Main {
                         System.out
                                 .println("# disabling sizeOf, run  -javaagent:lib/SizeOf.jar or equiv. to enable");
                 }
+                ArrayList<DataGenerator.Distribution> distributions = new ArrayList<DataGenerator.Distribution>();
                 DataGenerator gen = new DataGenerator(N);
-                int TIMES = 100;
-                gen.setUniform();
-                test(gen, false, TIMES, sizeof);
-                System.out.println("# start counting benchmark performances");
-                test(gen, true, TIMES, sizeof);
-                System.out.println();
-                gen.setZipfian();
-                test(gen, false, TIMES, sizeof);
-                test(gen, true, TIMES, sizeof);
-                System.out.println();
+                File file = null;
+                DatasetReader.Format format = null;
+                for (String arg : args)
+                        if (arg.startsWith("seed="))
+                                gen = new DataGenerator(N, Long.parseLong(arg.substring(5)));
+                        else if (arg.startsWith("precision="))
+                                RunController.precision = Double.parseDouble(arg.substring(10));
+                        else if (arg.startsWith("budget="))
+                                RunController.budget = (long) (Double.parseDouble(arg.substring(7)) * 1e9);
+                        else if (arg.startsWith("file="))
+                                file = new File(arg.substring(5));
+                        else if (arg.startsWith("format="))
+                                format = DatasetReader.Format.valueOf(arg.substring(7).toUpperCase(Locale.US));
+                        else
+                                distributions.add(DataGenerator.Distribution.valueOf(arg.toUpperCase(Locale.US)));
+                if (file != null) {
+                        if (format == null)
+                                format = DatasetReader.guessFormat(file);
+                        try {
+                                System.out
+                                        .println("# verifying the answers (can take a long time)");
+                                Map<Scheme, String> failures = new EnumMap<Scheme, String>(Scheme.class);
+                                launchFileBench(file, format, gen.rand, sizeof, false, failures);
+                                System.out.println("# start counting benchmark performances");
+                                launchFileBench(file, format, gen.rand, sizeof, true, failures);
+                        } catch (IOException e) {
+                                System.out.println("# cannot read " + file + ": "
+                                        + e.getMessage());
+                        }
+                        System.out.println("#ignore = " + bogus);
+                        return;
+                }
+                if (distributions.isEmpty()) {
+                        distributions.add(DataGenerator.Distribution.UNIFORM);
+                        distributions.add(DataGenerator.Distribution.ZIPFIAN);
+                }
+                boolean first = true;
+                for (DataGenerator.Distribution dist : distributions) {
+                        gen.setDistribution(dist);
+                        test(gen, false, sizeof);
+                        if (first)
+                                System.out.println("# start counting benchmark performances");
+                        first = false;
+                        test(gen, true, sizeof);
+                        System.out.println();
+                }
         }
 
         /**
@@ -140,29 +223,32 @@ public class Main {
          *                data generator
          * @param verbose
          *                whether to print out the result
-         * @param TIMES
-         *                how many times should we run each test
          * @param sizeof
          *                whether to use the sizeOf library.
          */
         public static void test(final DataGenerator gen, final boolean verbose,
-                final int TIMES, boolean sizeof) {
+                boolean sizeof) {
                 if (!verbose)
                         System.out
-                                .println("# running a dry run (can take a long time)");
-                
-                if(!verbose) {
-                	int[] seuils = {1};
-                	launchBench(seuils, TIMES, gen, sizeof, verbose);
-                }
-                else {
-                	int[] seuils = {1024, 4096, 8192, 16384};
-                	launchBench(seuils, TIMES, gen, sizeof, verbose);
-                }                
+                                .println("# verifying the answers (can take a long time)");
+                int[] seuils = {1024, 4096, 8192, 16384};
+                launchBench(seuils, gen, sizeof, verbose);
+                launchRangeBench(gen, verbose);
                 System.out.println("#ignore = " + bogus);
         }
         
-        public static void launchBench(int[] seuils, int TIMES, final DataGenerator gen, boolean sizeof, boolean verbose){
+        /**
+         * @param seuils
+         *                Roaring bitmap/array conversion thresholds
+         * @param gen
+         *                data generator
+         * @param sizeof
+         *                whether to use the sizeOf library.
+         * @param verbose
+         *                whether to print out the result (otherwise the
+         *                answers are verified over VERIFY_TIMES iterations)
+         */
+        public static void launchBench(int[] seuils, final DataGenerator gen, boolean sizeof, boolean verbose){
          long bef, aft;
          DecimalFormat df = new DecimalFormat("0.000E0");
          DecimalFormat dfb = new DecimalFormat("000.0");
@@ -171,14 +257,14 @@ public class Main {
         	if(verbose) System.out.println("\nRoaring bitmap/array conversion threshold = "+seuils[seuil]+"\n");
         	
         	if (verbose)
-                if (gen.is_zipfian())
-                        System.out.println("### zipfian test");
-                else
-                        System.out.println("### uniform test");
+                        System.out.println("### " + gen.getName() + " test");
         if (verbose)
                 System.out
                         .println("# first columns are timings [intersection times in ns], then append times in ns, "
-                                + "then removes times in ns, then bits/int, then union times");
+                                + "then removes times in ns, then bits/int, then union times, "
+                                + "then xor times, then andnot times, then LazyVB intersection "
+                                + "and union times with LazyVarByteHierarchBmpOps (the LazyVB "
+                                + "columns time the library, wrong when it missed integers)");
         if (verbose && sizeof)
                 System.out
                         .println("# For size (last columns), first column is estimated, second is sizeof");
@@ -203,8 +289,25 @@ public class Main {
                 double[] truestorageinbits = new double[nbSchemes];
                 double[] appendTimes = new double[nbSchemes];
                 double[] removeTimes = new double[nbSchemes];
+                double[] xors = new double[nbSchemes];
+                double[] andnots = new double[nbSchemes];
+                // LazyVB AND and OR of LazyVarByteHierarchBmpOps
+                double[] merges = new double[2];
+                // whether the AND and OR of the library gave a wrong answer
+                boolean[] wrong = new boolean[2];
+                RunController rc = new RunController();
+                rc.watch(timings);
+                rc.watch(appendTimes);
+                rc.watch(removeTimes);
+                rc.watch(unions);
+                rc.watch(xors);
+                rc.watch(andnots);
+                rc.watch(merges);
+                rc.follow(storageinbits);
+                rc.follow(truestorageinbits);
 
-                for (int times = 0; times < TIMES; ++times) {
+                // the correctness pass checks every answer, the timed pass none
+                for (int t = 0; verbose ? rc.next() : t < VERIFY_TIMES; ++t) {
                         int[] v1 = gen.getRandomArray(d);
                         int[] v2 = gen.getRandomArray(d);
 //######################// BitSet
@@ -244,6 +347,28 @@ public class Main {
                         aft = System.nanoTime();
                         unions[0] += aft - bef;
                         bogus += b1u.length();
+                        // XOR times.
+                        bef = System.nanoTime();
+                        BitSet b1x = (BitSet) borig1.clone(); // for
+                                                              // fair
+                                                              // comparison
+                                                              // (not
+                                                              // inplace)
+                        b1x.xor(b2);
+                        aft = System.nanoTime();
+                        xors[0] += aft - bef;
+                        bogus += b1x.length();
+                        // ANDNOT times.
+                        bef = System.nanoTime();
+                        BitSet b1an = (BitSet) borig1.clone(); // for
+                                                               // fair
+                                                               // comparison
+                                                               // (not
+                                                               // inplace)
+                        b1an.andNot(b2);
+                        aft = System.nanoTime();
+                        andnots[0] += aft - bef;
+                        bogus += b1an.length();
                         // Remove times
                         int toRemove = v1[gen.rand.nextInt(gen.N)];
                         bef = System.nanoTime();
@@ -256,7 +381,11 @@ public class Main {
                         b2 = null;
                         int[] trueintersection = verbose? null : toArray(b1);
                         int[] trueunion = verbose? null : toArray(b1u);
+                        int[] truexor = verbose? null : toArray(b1x);
+                        int[] trueandnot = verbose? null : toArray(b1an);
                         b1u = null;
+                        b1x = null;
+                        b1an = null;
                         b1 = null;
 //######################// Concise
                         // Append times
@@ -295,6 +424,24 @@ public class Main {
                                throw new RuntimeException("bug");
                         bogus += cs1u.size();
                         unions[1] += aft - bef;
+                        bef = System.nanoTime();
+                        ConciseSet cs1x = cs1.symmetricDifference(cs2);
+                        aft = System.nanoTime();
+                        // we verify the answer
+                        if(!verbose)
+                        if (!Arrays.equals(toArray(cs1x), truexor))
+                               throw new RuntimeException("bug");
+                        bogus += cs1x.size();
+                        xors[1] += aft - bef;
+                        bef = System.nanoTime();
+                        ConciseSet cs1an = cs1.difference(cs2);
+                        aft = System.nanoTime();
+                        // we verify the answer
+                        if(!verbose)
+                        if (!Arrays.equals(toArray(cs1an), trueandnot))
+                               throw new RuntimeException("bug");
+                        bogus += cs1an.size();
+                        andnots[1] += aft - bef;
                         // Removal times
                         bef = System.nanoTime();
                         cs2.remove(toRemove);
@@ -308,6 +455,8 @@ public class Main {
                         cs2 = null;
                         cs1i = null;
                         cs1u = null;
+                        cs1x = null;
+                        cs1an = null;
 //######################// WAHConcise
                         // Append times
                         bef = System.nanoTime();
@@ -347,6 +496,25 @@ public class Main {
                                 throw new RuntimeException("bug");
                         bogus += wah1u.size();
                         unions[2] += aft - bef;
+                        // XOR times
+                        bef = System.nanoTime();
+                        ConciseSet wah1x = wah1.symmetricDifference(wah2);
+                        aft = System.nanoTime();
+                        // we verify the answer
+                        if(!verbose) if (!Arrays.equals(toArray(wah1x), truexor))
+                                throw new RuntimeException("bug");
+                        bogus += wah1x.size();
+                        xors[2] += aft - bef;
+                        // ANDNOT times
+                        bef = System.nanoTime();
+                        ConciseSet wah1an = wah1.difference(wah2);
+                        aft = System.nanoTime();
+                        // we verify the answer
+                        if(!verbose) if (!Arrays.equals(toArray(wah1an),
+                                trueandnot))
+                                throw new RuntimeException("bug");
+                        bogus += wah1an.size();
+                        andnots[2] += aft - bef;
                         // Removing times
                         bef = System.nanoTime();
                         wah2.remove(toRemove);
@@ -360,6 +528,8 @@ public class Main {
                         wah2 = null;
                         wah1i = null;
                         wah1u = null;
+                        wah1x = null;
+                        wah1an = null;
 //######################// HierarchicalBitmap
                         HierarchiqueBitmap hb1 = new HierarchiqueBitmap();
                         HierarchiqueBitmap hb2 = new HierarchiqueBitmap();
@@ -396,6 +566,26 @@ public class Main {
                         //if(!verbose) if (!Arrays.equals(rb1u.toArray(), trueunion))
                           //      throw new RuntimeException("bug");
                         unions[3] += aft - bef;
+                        // XOR times
+                        bef = System.nanoTime();
+                        HierarchiqueBitmap hb1x = HierarchiqueBitmapOps.XOR(hb1, hb2);
+                        aft = System.nanoTime();
+                        bogus += hb1x.length();
+                        // we verify the answer
+                        if(!verbose) if (!Arrays.equals(HierarchiqueBitmapOps.toArray(hb1x),
+                                truexor))
+                                throw new RuntimeException("bug");
+                        xors[3] += aft - bef;
+                        // ANDNOT times
+                        bef = System.nanoTime();
+                        HierarchiqueBitmap hb1an = HierarchiqueBitmapOps.ANDNOT(hb1, hb2);
+                        aft = System.nanoTime();
+                        bogus += hb1an.length();
+                        // we verify the answer
+                        if(!verbose) if (!Arrays.equals(HierarchiqueBitmapOps.toArray(hb1an),
+                                trueandnot))
+                                throw new RuntimeException("bug");
+                        andnots[3] += aft - bef;
                         // Remove times
                         bef = System.nanoTime();
                         //rb2.remove(toRemove);
@@ -441,6 +631,26 @@ public class Main {
                         //if(!verbose) if (!Arrays.equals(rb1u.toArray(), trueunion))
                           //      throw new RuntimeException("bug");
                         unions[4] += aft - bef;
+                        // XOR times
+                        bef = System.nanoTime();
+                        LazyHierarchiqueBitmap lhb1x = LazyHierarchiqueBitmapOps.XOR(lhb1, lhb2);
+                        aft = System.nanoTime();
+                        bogus += lhb1x.length();
+                        // we verify the answer
+                        if(!verbose) if (!Arrays.equals(LazyHierarchiqueBitmapOps.toArray(lhb1x),
+                                truexor))
+                                throw new RuntimeException("bug");
+                        xors[4] += aft - bef;
+                        // ANDNOT times
+                        bef = System.nanoTime();
+                        LazyHierarchiqueBitmap lhb1an = LazyHierarchiqueBitmapOps.ANDNOT(lhb1, lhb2);
+                        aft = System.nanoTime();
+                        bogus += lhb1an.length();
+                        // we verify the answer
+                        if(!verbose) if (!Arrays.equals(LazyHierarchiqueBitmapOps.toArray(lhb1an),
+                                trueandnot))
+                                throw new RuntimeException("bug");
+                        andnots[4] += aft - bef;
                         // Remove times
                         /*bef = System.nanoTime();
                         rb2.remove(toRemove);
@@ -458,39 +668,79 @@ public class Main {
                         aft = System.nanoTime();
                         bogus += lzVrhb1.length();
                         appendTimes[5] += aft - bef;
-                        lhb2.addAll(v2);
+                        lzVrhb2.addAll(v2);
                         // Storage
                         storageinbits[5] += lzVrhb1.length()*8*5;
                         storageinbits[5] += lzVrhb2.length()*8*5;
                         if (sizeof)
                                 truestorageinbits[5] += SizeOf
-                                        .deepSizeOf(lhb1)
+                                        .deepSizeOf(lzVrhb1)
                                         * 8
-                                        + SizeOf.deepSizeOf(lhb2) * 2;
-                        // Intersect times
+                                        + SizeOf.deepSizeOf(lzVrhb2) * 2;
+                        // Intersect times, of the library and of the Ops
                         bef = System.nanoTime();
-                        LazyVarByteHierarchBmp lzVrhb1i=null;
-						try {
-							lzVrhb1i = LazyVarByteHierarchBmp.AND(lzVrhb1, lzVrhb2);
-						} catch (Exception e) {e.printStackTrace();}
+                        LazyVarByteHierarchBmp lzVrhb1i = null;
+                        try {
+                                lzVrhb1i = LazyVarByteHierarchBmp.AND(lzVrhb1, lzVrhb2);
+                        } catch (Exception e) {
+                                wrong[0] = true;
+                        }
                         aft = System.nanoTime();
-                        // we verify the answer
-                        //if(!verbose) if (!Arrays.equals(hb1i.toArray(),
-                           //trueintersection)) throw new RuntimeException("bug");
-                        bogus += lzVrhb1i.length();
                         timings[5] += aft - bef;
-                        // Union times
-                        LazyVarByteHierarchBmp lzVrhb1u = null;
                         bef = System.nanoTime();
+                        LazyVarByteHierarchBmp lzVrhb1mi = LazyVarByteHierarchBmpOps.AND(lzVrhb1, lzVrhb2);
+                        aft = System.nanoTime();
+                        merges[0] += aft - bef;
+                        // we verify the answers: the library misses
+                        // integers on sparse data, the Ops should not
+                        int[] mergedi = LazyVarByteHierarchBmpOps.toArray(lzVrhb1mi);
+                        if(!verbose) if (!Arrays.equals(mergedi, trueintersection))
+                                throw new RuntimeException("bug");
+                        if (!wrong[0] && !Arrays.equals(LazyVarByteHierarchBmpOps.toArray(lzVrhb1i),
+                                mergedi))
+                                wrong[0] = true;
+                        bogus += lzVrhb1mi.length();
+                        // Union times, same
+                        bef = System.nanoTime();
+                        LazyVarByteHierarchBmp lzVrhb1u = null;
                         try {
-                        	lzVrhb1u = LazyVarByteHierarchBmp.OR(lzVrhb1, lzVrhb2);
-						} catch (Exception e) {e.printStackTrace();}
+                                lzVrhb1u = LazyVarByteHierarchBmp.OR(lzVrhb1, lzVrhb2);
+                        } catch (Exception e) {
+                                wrong[1] = true;
+                        }
                         aft = System.nanoTime();
-                        bogus += lzVrhb1u.length();
-                        // we verify the answer
-                        //if(!verbose) if (!Arrays.equals(rb1u.toArray(), trueunion))
-                          //      throw new RuntimeException("bug");
                         unions[5] += aft - bef;
+                        bef = System.nanoTime();
+                        LazyVarByteHierarchBmp lzVrhb1mu = LazyVarByteHierarchBmpOps.OR(lzVrhb1, lzVrhb2);
+                        aft = System.nanoTime();
+                        merges[1] += aft - bef;
+                        int[] mergedu = LazyVarByteHierarchBmpOps.toArray(lzVrhb1mu);
+                        if(!verbose) if (!Arrays.equals(mergedu, trueunion))
+                                throw new RuntimeException("bug");
+                        if (!wrong[1] && !Arrays.equals(LazyVarByteHierarchBmpOps.toArray(lzVrhb1u),
+                                mergedu))
+                                wrong[1] = true;
+                        bogus += lzVrhb1mu.length();
+                        // XOR times
+                        bef = System.nanoTime();
+                        LazyVarByteHierarchBmp lzVrhb1x = LazyVarByteHierarchBmpOps.XOR(lzVrhb1, lzVrhb2);
+                        aft = System.nanoTime();
+                        bogus += lzVrhb1x.length();
+                        // we verify the answer
+                        if(!verbose) if (!Arrays.equals(LazyVarByteHierarchBmpOps.toArray(lzVrhb1x),
+                                truexor))
+                                throw new RuntimeException("bug");
+                        xors[5] += aft - bef;
+                        // ANDNOT times
+                        bef = System.nanoTime();
+                        LazyVarByteHierarchBmp lzVrhb1an = LazyVarByteHierarchBmpOps.ANDNOT(lzVrhb1, lzVrhb2);
+                        aft = System.nanoTime();
+                        bogus += lzVrhb1an.length();
+                        // we verify the answer
+                        if(!verbose) if (!Arrays.equals(LazyVarByteHierarchBmpOps.toArray(lzVrhb1an),
+                                trueandnot))
+                                throw new RuntimeException("bug");
+                        andnots[5] += aft - bef;
                         // Remove times
                         /*bef = System.nanoTime();
                         rb2.remove(toRemove);
@@ -536,6 +786,24 @@ public class Main {
                                 throw new RuntimeException("bug");
                         bogus += rb1u.getCardinality();
                         unions[6] += aft - bef;
+                        // XOR times
+                        bef = System.nanoTime();
+                        RoaringBitmap rb1x = RoaringBitmap.xor(rb1, rb2);
+                        aft = System.nanoTime();
+                        // we verify the answer
+                        if(!verbose) if (!Arrays.equals(rb1x.toArray(), truexor))
+                                throw new RuntimeException("bug");
+                        bogus += rb1x.getCardinality();
+                        xors[6] += aft - bef;
+                        // ANDNOT times
+                        bef = System.nanoTime();
+                        RoaringBitmap rb1an = RoaringBitmap.andNot(rb1, rb2);
+                        aft = System.nanoTime();
+                        // we verify the answer
+                        if(!verbose) if (!Arrays.equals(rb1an.toArray(), trueandnot))
+                                throw new RuntimeException("bug");
+                        bogus += rb1an.getCardinality();
+                        andnots[6] += aft - bef;
                         // Remove times
                         bef = System.nanoTime();
                         rb2.remove(toRemove);
@@ -548,7 +816,10 @@ public class Main {
                         rb2 = null;
                         rb1i = null;
                         rb1u = null;
+                        rb1x = null;
+                        rb1an = null;
                 }
+                final int TIMES = rc.getSamples();
                 if (verbose) {
                         System.out.print(df.format(d) + "\t"
                                 + df.format(timings[0] / TIMES)
@@ -561,7 +832,7 @@ public class Main {
                                 + "\t\t"
                                 + df.format(timings[4] / TIMES)
                                 + "\t\t"
-                                + df.format(timings[5] / TIMES)
+                                + (wrong[0] ? "wrong" : df.format(timings[5] / TIMES))
                                 + "\t\t"
                                 + df.format(timings[6] / TIMES));
                         System.out.print("\t\t\t"
@@ -674,13 +945,695 @@ public class Main {
                                 + df.format(unions[2] / TIMES) + "\t\t"
                                 + df.format(unions[3] / TIMES) + "\t\t"
                                 + df.format(unions[4] / TIMES) + "\t\t"
-                                + df.format(unions[5] / TIMES) + "\t\t"
+                                + (wrong[1] ? "wrong" : df.format(unions[5] / TIMES)) + "\t\t"
                                 + df.format(unions[6] / TIMES));
+                if (verbose)
+                        System.out.print("\t\t\t"
+                                + df.format(xors[0] / TIMES) + "\t\t"
+                                + df.format(xors[1] / TIMES) + "\t\t"
+                                + df.format(xors[2] / TIMES) + "\t\t"
+                                + df.format(xors[3] / TIMES) + "\t\t"
+                                + df.format(xors[4] / TIMES) + "\t\t"
+                                + df.format(xors[5] / TIMES) + "\t\t"
+                                + df.format(xors[6] / TIMES));
+                if (verbose)
+                        System.out.print("\t\t\t"
+                                + df.format(andnots[0] / TIMES) + "\t\t"
+                                + df.format(andnots[1] / TIMES) + "\t\t"
+                                + df.format(andnots[2] / TIMES) + "\t\t"
+                                + df.format(andnots[3] / TIMES) + "\t\t"
+                                + df.format(andnots[4] / TIMES) + "\t\t"
+                                + df.format(andnots[5] / TIMES) + "\t\t"
+                                + df.format(andnots[6] / TIMES));
+                if (verbose)
+                        System.out.print("\t\t\t"
+                                + df.format(merges[0] / TIMES) + "\t\t"
+                                + df.format(merges[1] / TIMES));
                 if(verbose) System.out.println();
+                if (verbose) {
+                        System.out.println(rc.summary());
+                        System.out.println("# 95% CI half-widths in %: intersections "
+                                + rc.precisions(0) + "; appends " + rc.precisions(1)
+                                + "; removes " + rc.precisions(2) + "; unions "
+                                + rc.precisions(3) + "; xors " + rc.precisions(4)
+                                + "; andnots " + rc.precisions(5)
+                                + "; LazyVB Ops intersections and unions " + rc.precisions(6));
+                }
         }
      }
   }
 
+        // ConciseSet.toArray() returns null on empty sets
+        private static int[] toArray(final ConciseSet cs) {
+                int[] a = cs.toArray();
+                return a == null ? new int[0] : a;
+        }
+
+        /**
+         * Range workloads on the schemes supporting them: counting, iterating,
+         * removing and adding the integers of a random window [lo, lo + width)
+         * for several widths.
+         * 
+         * @param gen
+         *                data generator
+         * @param verbose
+         *                whether to print out the result (otherwise the
+         *                answers are verified over VERIFY_TIMES iterations)
+         */
+        public static void launchRangeBench(final DataGenerator gen, boolean verbose) {
+                long bef, aft;
+                DecimalFormat df = new DecimalFormat("0.000E0");
+                final int[] widths = {1 << 8, 1 << 12, 1 << 16, 1 << 20};
+                if (verbose)
+                        System.out.println("### " + gen.getName() + " range test");
+                if (verbose)
+                        System.out
+                                .println("# first columns are rangeCardinality times in ns, then range iteration times in ns, "
+                                        + "then removeRange times in ns, then addRange times in ns");
+                if (verbose)
+                        System.out
+                                .println("# density\twidth\tbitset\t\tHirB\t\tLazyVB"
+                                        + "\t\t\tbitset\t\tHirB\t\tLazyVB"
+                                        + "\t\t\tbitset\t\tHirB\t\tLazyVB"
+                                        + "\t\t\tbitset\t\tHirB\t\tLazyVB");
+                for (double d = 0.001; d <= 1.000; d *= 10) {
+                        int nbSchemes = 3;
+                        double[][] cardTimes = new double[widths.length][nbSchemes];
+                        double[][] iterTimes = new double[widths.length][nbSchemes];
+                        double[][] removeTimes = new double[widths.length][nbSchemes];
+                        double[][] addTimes = new double[widths.length][nbSchemes];
+                        RunController rc = new RunController();
+                        for (int w = 0; w < widths.length; ++w) {
+                                rc.watch(cardTimes[w]);
+                                rc.watch(iterTimes[w]);
+                                rc.watch(removeTimes[w]);
+                                rc.watch(addTimes[w]);
+                        }
+                        for (int t = 0; verbose ? rc.next() : t < VERIFY_TIMES; ++t) {
+                                int[] v1 = gen.getRandomArray(d);
+                                for (int w = 0; w < widths.length; ++w) {
+                                        int lo = gen.rand.nextInt(Math.max(1,
+                                                v1[v1.length - 1] - widths[w]));
+                                        int hi = lo + widths[w];
+//######################// BitSet
+                                        BitSet bs = toBitSet(v1);
+                                        bef = System.nanoTime();
+                                        int trueCard = bs.get(lo, hi).cardinality();
+                                        aft = System.nanoTime();
+                                        cardTimes[w][0] += aft - bef;
+                                        bogus += trueCard;
+                                        bef = System.nanoTime();
+                                        for (int x = bs.nextSetBit(lo); x >= 0 && x < hi; x = bs.nextSetBit(x + 1))
+                                                bogus += x;
+                                        aft = System.nanoTime();
+                                        iterTimes[w][0] += aft - bef;
+                                        int[] trueRange = verbose ? null : toArray(bs.get(lo, hi), lo);
+                                        bef = System.nanoTime();
+                                        bs.clear(lo, hi);
+                                        aft = System.nanoTime();
+                                        removeTimes[w][0] += aft - bef;
+                                        int[] trueRemoved = verbose ? null : toArray(bs);
+                                        bef = System.nanoTime();
+                                        bs.set(lo, hi);
+                                        aft = System.nanoTime();
+                                        addTimes[w][0] += aft - bef;
+                                        bogus += bs.length();
+                                        int[] trueAdded = verbose ? null : toArray(bs);
+                                        bs = null;
+//######################// HierarchicalBitmap
+                                        HierarchiqueBitmap hb = new HierarchiqueBitmap();
+                                        hb.addAll(v1);
+                                        bef = System.nanoTime();
+                                        long card = HierarchiqueBitmapOps.rangeCardinality(hb, lo, hi);
+                                        aft = System.nanoTime();
+                                        cardTimes[w][1] += aft - bef;
+                                        if (!verbose) if (card != trueCard)
+                                                throw new RuntimeException("bug");
+                                        bogus += card;
+                                        bef = System.nanoTime();
+                                        IntIterator hbi = HierarchiqueBitmapOps.iterator(hb, lo, hi);
+                                        while (hbi.hasNext())
+                                                bogus += hbi.next();
+                                        aft = System.nanoTime();
+                                        iterTimes[w][1] += aft - bef;
+                                        if (!verbose) if (!Arrays.equals(toArray(HierarchiqueBitmapOps.iterator(hb, lo, hi)),
+                                                trueRange))
+                                                throw new RuntimeException("bug");
+                                        bef = System.nanoTime();
+                                        HierarchiqueBitmapOps.removeRange(hb, lo, hi);
+                                        aft = System.nanoTime();
+                                        removeTimes[w][1] += aft - bef;
+                                        if (!verbose) if (!Arrays.equals(HierarchiqueBitmapOps.toArray(hb),
+                                                trueRemoved))
+                                                throw new RuntimeException("bug");
+                                        bef = System.nanoTime();
+                                        HierarchiqueBitmapOps.addRange(hb, lo, hi);
+                                        aft = System.nanoTime();
+                                        addTimes[w][1] += aft - bef;
+                                        if (!verbose) if (!Arrays.equals(HierarchiqueBitmapOps.toArray(hb),
+                                                trueAdded))
+                                                throw new RuntimeException("bug");
+                                        hb = null;
+//######################//LazyHierarchicalBitmap+VarByte
+                                        LazyVarByteHierarchBmp lzVrhb = new LazyVarByteHierarchBmp();
+                                        lzVrhb.addAll(v1);
+                                        bef = System.nanoTime();
+                                        card = LazyVarByteHierarchBmpOps.rangeCardinality(lzVrhb, lo, hi);
+                                        aft = System.nanoTime();
+                                        cardTimes[w][2] += aft - bef;
+                                        if (!verbose) if (card != trueCard)
+                                                throw new RuntimeException("bug");
+                                        bogus += card;
+                                        bef = System.nanoTime();
+                                        IntIterator lzVrhbi = LazyVarByteHierarchBmpOps.iterator(lzVrhb, lo, hi);
+                                        while (lzVrhbi.hasNext())
+                                                bogus += lzVrhbi.next();
+                                        aft = System.nanoTime();
+                                        iterTimes[w][2] += aft - bef;
+                                        if (!verbose) if (!Arrays.equals(toArray(LazyVarByteHierarchBmpOps.iterator(lzVrhb, lo, hi)),
+                                                trueRange))
+                                                throw new RuntimeException("bug");
+                                        bef = System.nanoTime();
+                                        LazyVarByteHierarchBmpOps.removeRange(lzVrhb, lo, hi);
+                                        aft = System.nanoTime();
+                                        removeTimes[w][2] += aft - bef;
+                                        if (!verbose) if (!Arrays.equals(LazyVarByteHierarchBmpOps.toArray(lzVrhb),
+                                                trueRemoved))
+                                                throw new RuntimeException("bug");
+                                        bef = System.nanoTime();
+                                        LazyVarByteHierarchBmpOps.addRange(lzVrhb, lo, hi);
+                                        aft = System.nanoTime();
+                                        addTimes[w][2] += aft - bef;
+                                        if (!verbose) if (!Arrays.equals(LazyVarByteHierarchBmpOps.toArray(lzVrhb),
+                                                trueAdded))
+                                                throw new RuntimeException("bug");
+                                        lzVrhb = null;
+                                }
+                        }
+                        final int TIMES = rc.getSamples();
+                        if (verbose) {
+                                for (int w = 0; w < widths.length; ++w) {
+                                        System.out.print(df.format(d) + "\t" + widths[w]);
+                                        for (double[][] timings : new double[][][] {cardTimes, iterTimes, removeTimes, addTimes}) {
+                                                System.out.print("\t");
+                                                for (int k = 0; k < nbSchemes; ++k)
+                                                        System.out.print("\t" + df.format(timings[w][k] / TIMES) + "\t");
+                                        }
+                                        System.out.println();
+                                }
+                                System.out.println(rc.summary());
+                                for (int w = 0; w < widths.length; ++w)
+                                        System.out.println("# 95% CI half-widths in % for width "
+                                                + widths[w] + ": cardinalities "
+                                                + rc.precisions(4 * w) + "; iterations "
+                                                + rc.precisions(4 * w + 1) + "; removes "
+                                                + rc.precisions(4 * w + 2) + "; adds "
+                                                + rc.precisions(4 * w + 3));
+                        }
+                }
+        }
+
+        /**
+         * Benchmark on the sorted integer lists of a dataset file: each list is
+         * streamed by batches of at most FILE_BATCH integers into every
+         * scheme, and the intersections, unions and removals are measured
+         * over the pairs of successive lists. Only two lists are held in
+         * memory at any time.
+         * 
+         * @param file
+         *                dataset file
+         * @param format
+         *                format of the file
+         * @param rand
+         *                pseudo-random generator picking the removed integers
+         * @param sizeof
+         *                whether to use the sizeOf library.
+         * @param verbose
+         *                whether to print out the result (otherwise the
+         *                answers are verified)
+         * @param failures
+         *                why a scheme gives wrong answers on the file, filled
+         *                when verifying: such a scheme is then not timed
+         * @throws IOException
+         *                 if the file cannot be read
+         */
+        public static void launchFileBench(final File file,
+                final DatasetReader.Format format, final Random rand,
+                boolean sizeof, boolean verbose, Map<Scheme, String> failures)
+                throws IOException {
+                long bef, aft;
+                DecimalFormat df = new DecimalFormat("0.000E0");
+                DecimalFormat dfb = new DecimalFormat("000.0");
+                int nbSchemes = 7;
+                double[] timings = new double[nbSchemes];
+                double[] unions = new double[nbSchemes];
+                double[] storageinbits = new double[nbSchemes];
+                double[] truestorageinbits = new double[nbSchemes];
+                double[] appendTimes = new double[nbSchemes];
+                double[] removeTimes = new double[nbSchemes];
+                // LazyVB AND and OR of LazyVarByteHierarchBmpOps
+                double[] merges = new double[2];
+                // whether the AND and OR of the library gave a wrong answer
+                boolean[] wrong = new boolean[2];
+                long ints = 0;
+                int pairs = 0;
+                int[] batch = new int[FILE_BATCH];
+                ArrayContainer.DEFAULT_MAX_SIZE = 4096;
+                BitSet bsPrev = null;
+                ConciseSet csPrev = null;
+                ConciseSet wahPrev = null;
+                HierarchiqueBitmap hbPrev = null;
+                LazyHierarchiqueBitmap lhbPrev = null;
+                LazyVarByteHierarchBmp lzVrhbPrev = null;
+                RoaringBitmap rbPrev = null;
+                int toRemove = -1;
+                DatasetReader reader = new DatasetReader(file, format);
+                try {
+                        while (reader.nextList()) {
+                                BitSet bs = new BitSet();
+                                ConciseSet cs = new ConciseSet();
+                                ConciseSet wah = new ConciseSet(true);
+                                HierarchiqueBitmap hb = new HierarchiqueBitmap();
+                                LazyHierarchiqueBitmap lhb = new LazyHierarchiqueBitmap();
+                                LazyVarByteHierarchBmp lzVrhb = new LazyVarByteHierarchBmp();
+                                RoaringBitmap rb = new RoaringBitmap();
+                                long card = 0;
+                                int sample = -1;
+                                int n;
+                                while ((n = reader.read(batch)) > 0) {
+                                        int[] v = n == batch.length ? batch : Arrays.copyOf(batch, n);
+                                        // reservoir sampling of the integer to remove
+                                        for (int x : v)
+                                                if ((long) (rand.nextDouble() * ++card) == 0)
+                                                        sample = x;
+//######################// Append times
+                                        bef = System.nanoTime();
+                                        for (int x : v)
+                                                bs.set(x);
+                                        aft = System.nanoTime();
+                                        appendTimes[0] += aft - bef;
+                                        if (!failures.containsKey(Scheme.CONCISE)) {
+                                                bef = System.nanoTime();
+                                                for (int x : v)
+                                                        cs.add(x);
+                                                aft = System.nanoTime();
+                                                appendTimes[1] += aft - bef;
+                                        }
+                                        if (!failures.containsKey(Scheme.WAH)) {
+                                                bef = System.nanoTime();
+                                                for (int x : v)
+                                                        wah.add(x);
+                                                aft = System.nanoTime();
+                                                appendTimes[2] += aft - bef;
+                                        }
+                                        if (!failures.containsKey(Scheme.HIRB)) {
+                                                bef = System.nanoTime();
+                                                hb.addAll(v);
+                                                aft = System.nanoTime();
+                                                appendTimes[3] += aft - bef;
+                                        }
+                                        if (!failures.containsKey(Scheme.LAZYHB)) {
+                                                bef = System.nanoTime();
+                                                lhb.addAll(v);
+                                                aft = System.nanoTime();
+                                                appendTimes[4] += aft - bef;
+                                        }
+                                        if (!failures.containsKey(Scheme.LAZYVB)) {
+                                                // addAll of the library can fail on
+                                                // sparse lists
+                                                try {
+                                                        bef = System.nanoTime();
+                                                        lzVrhb.addAll(v);
+                                                        aft = System.nanoTime();
+                                                        appendTimes[5] += aft - bef;
+                                                } catch (RuntimeException e) {
+                                                        failures.put(Scheme.LAZYVB, e + " on list "
+                                                                + reader.getListCount());
+                                                }
+                                        }
+                                        if (!failures.containsKey(Scheme.ROAR)) {
+                                                bef = System.nanoTime();
+                                                for (int x : v)
+                                                        rb.add(x);
+                                                aft = System.nanoTime();
+                                                appendTimes[6] += aft - bef;
+                                        }
+                                }
+                                if (card == 0)
+                                        continue;
+                                ints += card;
+                                bogus += bs.length() + cs.size() + wah.size()
+                                        + hb.length() + lhb.length()
+                                        + lzVrhb.length() + rb.getCardinality();
+                                // we verify the construction
+                                if (!verbose) {
+                                        int[] truelist = toArray(bs);
+                                        check(failures, Scheme.CONCISE, toArray(cs), truelist, "content", reader);
+                                        check(failures, Scheme.WAH, toArray(wah), truelist, "content", reader);
+                                        check(failures, Scheme.HIRB, HierarchiqueBitmapOps.toArray(hb),
+                                                truelist, "content", reader);
+                                        check(failures, Scheme.LAZYHB, LazyHierarchiqueBitmapOps.toArray(lhb),
+                                                truelist, "content", reader);
+                                        check(failures, Scheme.LAZYVB, LazyVarByteHierarchBmpOps.toArray(lzVrhb),
+                                                truelist, "content", reader);
+                                        check(failures, Scheme.ROAR, rb.toArray(), truelist, "content", reader);
+                                }
+                                // Storage
+                                storageinbits[0] += bs.size();
+                                storageinbits[1] += cs.size()
+                                        * cs.collectionCompressionRatio() * 4 * 8;
+                                storageinbits[2] += wah.size()
+                                        * wah.collectionCompressionRatio() * 4 * 8;
+                                storageinbits[3] += hb.length() * 8 * 5;
+                                storageinbits[4] += lhb.length() * 8 * 5;
+                                storageinbits[5] += lzVrhb.length() * 8 * 5;
+                                storageinbits[6] += rb.getSizeInBytes() * 8;
+                                if (sizeof) {
+                                        truestorageinbits[0] += SizeOf.deepSizeOf(bs) * 8;
+                                        truestorageinbits[1] += SizeOf.deepSizeOf(cs) * 8;
+                                        truestorageinbits[2] += SizeOf.deepSizeOf(wah) * 8;
+                                        truestorageinbits[3] += SizeOf.deepSizeOf(hb) * 8;
+                                        truestorageinbits[4] += SizeOf.deepSizeOf(lhb) * 8;
+                                        truestorageinbits[5] += SizeOf.deepSizeOf(lzVrhb) * 8;
+                                        truestorageinbits[6] += SizeOf.deepSizeOf(rb) * 8;
+                                }
+                                if (bsPrev != null) {
+                                        ++pairs;
+//######################// BitSet
+                                        bef = System.nanoTime();
+                                        BitSet bsi = (BitSet) bsPrev.clone(); // not inplace
+                                        bsi.and(bs);
+                                        aft = System.nanoTime();
+                                        timings[0] += aft - bef;
+                                        bogus += bsi.length();
+                                        bef = System.nanoTime();
+                                        BitSet bsu = (BitSet) bsPrev.clone(); // not inplace
+                                        bsu.or(bs);
+                                        aft = System.nanoTime();
+                                        unions[0] += aft - bef;
+                                        bogus += bsu.length();
+                                        // the previous list is not used anymore:
+                                        // we remove one of its integers
+                                        bef = System.nanoTime();
+                                        bsPrev.clear(toRemove);
+                                        aft = System.nanoTime();
+                                        removeTimes[0] += aft - bef;
+                                        int[] trueintersection = verbose ? null : toArray(bsi);
+                                        int[] trueunion = verbose ? null : toArray(bsu);
+                                        int[] prevwithremoval = verbose ? null : toArray(bsPrev);
+                                        bsi = null;
+                                        bsu = null;
+//######################// Concise
+                                        if (!failures.containsKey(Scheme.CONCISE)) {
+                                                bef = System.nanoTime();
+                                                ConciseSet csi = csPrev.intersection(cs);
+                                                aft = System.nanoTime();
+                                                timings[1] += aft - bef;
+                                                if (!verbose)
+                                                        check(failures, Scheme.CONCISE, toArray(csi),
+                                                                trueintersection, "intersection", reader);
+                                                bogus += csi.size();
+                                                bef = System.nanoTime();
+                                                ConciseSet csu = csPrev.union(cs);
+                                                aft = System.nanoTime();
+                                                unions[1] += aft - bef;
+                                                if (!verbose)
+                                                        check(failures, Scheme.CONCISE, toArray(csu),
+                                                                trueunion, "union", reader);
+                                                bogus += csu.size();
+                                                bef = System.nanoTime();
+                                                csPrev.remove(toRemove);
+                                                aft = System.nanoTime();
+                                                removeTimes[1] += aft - bef;
+                                                if (!verbose)
+                                                        check(failures, Scheme.CONCISE, toArray(csPrev),
+                                                                prevwithremoval, "removal", reader);
+                                                csi = null;
+                                                csu = null;
+                                        }
+//######################// WAHConcise
+                                        if (!failures.containsKey(Scheme.WAH)) {
+                                                bef = System.nanoTime();
+                                                ConciseSet wahi = wahPrev.intersection(wah);
+                                                aft = System.nanoTime();
+                                                timings[2] += aft - bef;
+                                                if (!verbose)
+                                                        check(failures, Scheme.WAH, toArray(wahi),
+                                                                trueintersection, "intersection", reader);
+                                                bogus += wahi.size();
+                                                bef = System.nanoTime();
+                                                ConciseSet wahu = wahPrev.union(wah);
+                                                aft = System.nanoTime();
+                                                unions[2] += aft - bef;
+                                                if (!verbose)
+                                                        check(failures, Scheme.WAH, toArray(wahu),
+                                                                trueunion, "union", reader);
+                                                bogus += wahu.size();
+                                                bef = System.nanoTime();
+                                                wahPrev.remove(toRemove);
+                                                aft = System.nanoTime();
+                                                removeTimes[2] += aft - bef;
+                                                if (!verbose)
+                                                        check(failures, Scheme.WAH, toArray(wahPrev),
+                                                                prevwithremoval, "removal", reader);
+                                                wahi = null;
+                                                wahu = null;
+                                        }
+//######################// HierarchicalBitmap
+                                        if (!failures.containsKey(Scheme.HIRB)) {
+                                                bef = System.nanoTime();
+                                                HierarchiqueBitmap hbi = HierarchiqueBitmap.AND(hbPrev, hb);
+                                                aft = System.nanoTime();
+                                                timings[3] += aft - bef;
+                                                if (!verbose)
+                                                        check(failures, Scheme.HIRB, HierarchiqueBitmapOps.toArray(hbi),
+                                                                trueintersection, "intersection", reader);
+                                                bogus += hbi.length();
+                                                bef = System.nanoTime();
+                                                HierarchiqueBitmap hbu = HierarchiqueBitmap.OR(hbPrev, hb);
+                                                aft = System.nanoTime();
+                                                unions[3] += aft - bef;
+                                                if (!verbose)
+                                                        check(failures, Scheme.HIRB, HierarchiqueBitmapOps.toArray(hbu),
+                                                                trueunion, "union", reader);
+                                                bogus += hbu.length();
+                                                removeTimes[3] += 0.0; // no removal
+                                                hbi = null;
+                                                hbu = null;
+                                        }
+//######################// LazyHierarchicalBitmap
+                                        if (!failures.containsKey(Scheme.LAZYHB)) {
+                                                bef = System.nanoTime();
+                                                LazyHierarchiqueBitmap lhbi = LazyHierarchiqueBitmap.AND(lhbPrev, lhb);
+                                                aft = System.nanoTime();
+                                                timings[4] += aft - bef;
+                                                if (!verbose)
+                                                        check(failures, Scheme.LAZYHB, LazyHierarchiqueBitmapOps.toArray(lhbi),
+                                                                trueintersection, "intersection", reader);
+                                                bogus += lhbi.length();
+                                                bef = System.nanoTime();
+                                                LazyHierarchiqueBitmap lhbu = LazyHierarchiqueBitmap.OR(lhbPrev, lhb);
+                                                aft = System.nanoTime();
+                                                unions[4] += aft - bef;
+                                                if (!verbose)
+                                                        check(failures, Scheme.LAZYHB, LazyHierarchiqueBitmapOps.toArray(lhbu),
+                                                                trueunion, "union", reader);
+                                                bogus += lhbu.length();
+                                                removeTimes[4] += 0.0; // no removal
+                                                lhbi = null;
+                                                lhbu = null;
+                                        }
+//######################//LazyHierarchicalBitmap+VarByte
+                                        // AND and OR of the library miss integers on
+                                        // sparse data: they are timed in the LazyVB
+                                        // columns, and those of the Ops apart
+                                        if (!failures.containsKey(Scheme.LAZYVB)) {
+                                                bef = System.nanoTime();
+                                                LazyVarByteHierarchBmp lzVrhbi = null;
+                                                try {
+                                                        lzVrhbi = LazyVarByteHierarchBmp.AND(lzVrhbPrev, lzVrhb);
+                                                } catch (Exception e) {
+                                                        wrong[0] = true;
+                                                }
+                                                aft = System.nanoTime();
+                                                timings[5] += aft - bef;
+                                                if (!wrong[0] && !Arrays.equals(LazyVarByteHierarchBmpOps.toArray(lzVrhbi),
+                                                        trueintersection))
+                                                        wrong[0] = true;
+                                                bef = System.nanoTime();
+                                                LazyVarByteHierarchBmp lzVrhbu = null;
+                                                try {
+                                                        lzVrhbu = LazyVarByteHierarchBmp.OR(lzVrhbPrev, lzVrhb);
+                                                } catch (Exception e) {
+                                                        wrong[1] = true;
+                                                }
+                                                aft = System.nanoTime();
+                                                unions[5] += aft - bef;
+                                                if (!wrong[1] && !Arrays.equals(LazyVarByteHierarchBmpOps.toArray(lzVrhbu),
+                                                        trueunion))
+                                                        wrong[1] = true;
+                                                removeTimes[5] += 0.0; // no removal
+                                                lzVrhbi = null;
+                                                lzVrhbu = null;
+                                        }
+                                        if (!failures.containsKey(Scheme.LAZYVB)
+                                                && !failures.containsKey(Scheme.LAZYVB_OPS)) {
+                                                bef = System.nanoTime();
+                                                LazyVarByteHierarchBmp lzVrhbi = LazyVarByteHierarchBmpOps.AND(lzVrhbPrev, lzVrhb);
+                                                aft = System.nanoTime();
+                                                merges[0] += aft - bef;
+                                                if (!verbose)
+                                                        check(failures, Scheme.LAZYVB_OPS, LazyVarByteHierarchBmpOps.toArray(lzVrhbi),
+                                                                trueintersection, "intersection", reader);
+                                                bogus += lzVrhbi.length();
+                                                bef = System.nanoTime();
+                                                LazyVarByteHierarchBmp lzVrhbu = LazyVarByteHierarchBmpOps.OR(lzVrhbPrev, lzVrhb);
+                                                aft = System.nanoTime();
+                                                merges[1] += aft - bef;
+                                                if (!verbose)
+                                                        check(failures, Scheme.LAZYVB_OPS, LazyVarByteHierarchBmpOps.toArray(lzVrhbu),
+                                                                trueunion, "union", reader);
+                                                bogus += lzVrhbu.length();
+                                                lzVrhbi = null;
+                                                lzVrhbu = null;
+                                        }
+//######################// RoaringBitmap
+                                        if (!failures.containsKey(Scheme.ROAR)) {
+                                                bef = System.nanoTime();
+                                                RoaringBitmap rbi = RoaringBitmap.and(rbPrev, rb);
+                                                aft = System.nanoTime();
+                                                timings[6] += aft - bef;
+                                                if (!verbose)
+                                                        check(failures, Scheme.ROAR, rbi.toArray(),
+                                                                trueintersection, "intersection", reader);
+                                                bogus += rbi.getCardinality();
+                                                bef = System.nanoTime();
+                                                RoaringBitmap rbu = RoaringBitmap.or(rbPrev, rb);
+                                                aft = System.nanoTime();
+                                                unions[6] += aft - bef;
+                                                if (!verbose)
+                                                        check(failures, Scheme.ROAR, rbu.toArray(),
+                                                                trueunion, "union", reader);
+                                                bogus += rbu.getCardinality();
+                                                bef = System.nanoTime();
+                                                rbPrev.remove(toRemove);
+                                                aft = System.nanoTime();
+                                                removeTimes[6] += aft - bef;
+                                                if (!verbose)
+                                                        check(failures, Scheme.ROAR, rbPrev.toArray(),
+                                                                prevwithremoval, "removal", reader);
+                                                rbi = null;
+                                                rbu = null;
+                                        }
+                                }
+                                bsPrev = bs;
+                                csPrev = cs;
+                                wahPrev = wah;
+                                hbPrev = hb;
+                                lhbPrev = lhb;
+                                lzVrhbPrev = lzVrhb;
+                                rbPrev = rb;
+                                toRemove = sample;
+                        }
+                } finally {
+                        reader.close();
+                }
+                if (!verbose)
+                        return;
+                System.out.println("### " + file.getName() + " file test");
+                if (pairs == 0) {
+                        System.out.println("# the file should hold at least two non-empty lists");
+                        return;
+                }
+                System.out
+                        .println("# " + reader.getListCount() + " lists, " + pairs
+                                + " pairs of successive non-empty lists, "
+                                + ints + " integers");
+                System.out
+                        .println("# first columns are timings [intersection times in ns], then append times in ns, "
+                                + "then removes times in ns, then bits/int, then union times, then LazyVB "
+                                + "intersection and union times with LazyVarByteHierarchBmpOps (the LazyVB "
+                                + "columns time the library, wrong when it missed integers)");
+                if (sizeof)
+                        System.out
+                                .println("# For size, first column is estimated, second is sizeof");
+                System.out
+                        .print("# bitset\t\tconcise\t\twah\t\tHirB\t\tLazyHB\t\tLazyVB\t\troar"
+                                +   "\t\t\tbitset\t\tconcise\t\twah\t\tHirB\t\tLazyHB\t\tLazyVB\t\troar"
+                                +   "\t\t\tbitset\t\tconcise\t\twah\t\tHirB\t\tLazyHB\t\tLazyVB\t\troar");
+                if (sizeof)
+                        System.out
+                                .print("\t\tbitset\tbitset\tconcise\tconcise\twah\twah\tHirB\tHirB\tLazyHB\tLazyHB\tLazyVB\tLazyVB\troar\troar");
+                else
+                        System.out
+                                .print("\t\tbitset\t\tconcise\t\twah\t\tHirB\t\tLazyHB\t\tLazyVB\t\troar");
+                System.out
+                        .println("\t\t\tbitset\t\tconcise\t\twah\t\tHirB\t\tLazyHB\t\tLazyVB\t\troar"
+                                +   "\t\t\tLazyVB-ops\tLazyVB-ops");
+                // the schemes giving wrong answers are not timed
+                Scheme[] schemes = Scheme.values();
+                for (int k = 0; k < nbSchemes; ++k)
+                        System.out.print((k == 5 && wrong[0] ? "wrong"
+                                : cell(failures, schemes[k], df, timings[k] / pairs)) + "\t\t");
+                System.out.print("\t");
+                for (int k = 0; k < nbSchemes; ++k)
+                        System.out.print(cell(failures, schemes[k], df, appendTimes[k] / ints) + "\t\t");
+                System.out.print("\t\t");
+                for (int k = 0; k < nbSchemes; ++k)
+                        System.out.print(cell(failures, schemes[k], df, removeTimes[k] / pairs) + "\t\t");
+                System.out.print("\t\t");
+                for (int k = 0; k < nbSchemes; ++k)
+                        if (sizeof)
+                                System.out.print(cell(failures, schemes[k], dfb, storageinbits[k] / ints) + "\t"
+                                        + cell(failures, schemes[k], dfb, truestorageinbits[k] / ints) + "\t");
+                        else
+                                System.out.print(cell(failures, schemes[k], dfb, storageinbits[k] / ints) + "\t\t");
+                System.out.print("\t");
+                for (int k = 0; k < nbSchemes; ++k)
+                        System.out.print((k == 5 && wrong[1] ? "wrong"
+                                : cell(failures, schemes[k], df, unions[k] / pairs)) + "\t\t");
+                System.out.print("\t");
+                for (int k = 0; k < merges.length; ++k)
+                        System.out.print((failures.containsKey(Scheme.LAZYVB) ? "-"
+                                : cell(failures, Scheme.LAZYVB_OPS, df, merges[k] / pairs)) + "\t\t");
+                System.out.println();
+                for (Map.Entry<Scheme, String> f : failures.entrySet())
+                        System.out.println("# " + f.getKey() + " not timed, " + f.getValue());
+        }
+
+        // records the first wrong answer of a scheme
+        private static void check(Map<Scheme, String> failures, Scheme scheme,
+                int[] answer, int[] expected, String what, DatasetReader reader) {
+                if (!failures.containsKey(scheme) && !Arrays.equals(answer, expected))
+                        failures.put(scheme, "wrong " + what + " on list "
+                                + reader.getListCount());
+        }
+
+        // a value of a scheme, or a dash if it is not timed
+        private static String cell(Map<Scheme, String> failures, Scheme scheme,
+                DecimalFormat df, double value) {
+                return failures.containsKey(scheme) ? "-" : df.format(value);
+        }
+
+        private static int[] toArray(final IntIterator i) {
+                int[] a = new int[16];
+                int pos = 0;
+                while (i.hasNext()) {
+                        if (pos == a.length)
+                                a = Arrays.copyOf(a, 2 * pos);
+                        a[pos++] = i.next();
+                }
+                return Arrays.copyOf(a, pos);
+        }
+
+        // bs holds the integers of a range starting at offset
+        private static int[] toArray(final BitSet bs, int offset) {
+                int[] a = toArray(bs);
+                for (int k = 0; k < a.length; ++k)
+                        a[k] += offset;
+                return a;
+        }
+
         private static int[] toArray(final BitSet bs) {
                 int[] a = new int[bs.cardinality()];
                 int pos = 0;
@@ -0,0 +1,253 @@
+/*
+ * (c) Samy Chambi and Daniel Lemire
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ *
+ * Boolean predicate over the columns of a table (column = value, AND, OR,
+ * NOT), evaluated on their bitmap indexes.
+ *
+ * The optimized evaluation orders the operands of the intersections and
+ * unions by increasing estimated cardinality, turns the negations under an
+ * intersection into differences (instead of complementing them against all
+ * the rows), and stops evaluating an intersection as soon as it is empty.
+ * The naive evaluation follows the tree as written.
+ *
+ */
+public final class Predicate {
+
+        /**
+         * kinds of nodes
+         */
+        public enum Kind {
+                EQ, AND, OR, NOT
+        }
+
+        private final Kind kind;
+        private final int column;
+        private final int value;
+        private final Predicate[] children;
+
+        private Predicate(Kind kind, int column, int value, Predicate[] children) {
+                this.kind = kind;
+                this.column = column;
+                this.value = value;
+                this.children = children;
+        }
+
+        /**
+         * @param column
+         *                index of the column
+         * @param value
+         *                a value of the column
+         * @return the predicate column = value
+         */
+        public static Predicate eq(int column, int value) {
+                return new Predicate(Kind.EQ, column, value, null);
+        }
+
+        /**
+         * @param column
+         *                index of the column
+         * @param values
+         *                values of the column
+         * @return the predicate column IN (values)
+         */
+        public static Predicate in(int column, int... values) {
+                Predicate[] p = new Predicate[values.length];
+                for (int k = 0; k < values.length; ++k)
+                        p[k] = eq(column, values[k]);
+                return p.length == 1 ? p[0] : or(p);
+        }
+
+        /**
+         * @param p
+         *                operands
+         * @return their conjunction
+         */
+        public static Predicate and(Predicate... p) {
+                return new Predicate(Kind.AND, -1, -1, p);
+        }
+
+        /**
+         * @param p
+         *                operands
+         * @return their disjunction
+         */
+        public static Predicate or(Predicate... p) {
+                return new Predicate(Kind.OR, -1, -1, p);
+        }
+
+        /**
+         * @param p
+         *                operand
+         * @return its negation
+         */
+        public static Predicate not(Predicate p) {
+                return new Predicate(Kind.NOT, -1, -1, new Predicate[] {p});
+        }
+
+        /**
+         * @return kind of the root of the predicate
+         */
+        public Kind getKind() {
+                return kind;
+        }
+
+        /**
+         * @param table
+         *                values of the columns, table[column][row]
+         * @param row
+         *                a row
+         * @return whether the row satisfies the predicate
+         */
+        public boolean matches(int[][] table, int row) {
+                switch (kind) {
+                case EQ:
+                        return table[column][row] == value;
+                case NOT:
+                        return !children[0].matches(table, row);
+                case AND:
+                        for (Predicate p : children)
+                                if (!p.matches(table, row))
+                                        return false;
+                        return true;
+                default:
+                        for (Predicate p : children)
+                                if (p.matches(table, row))
+                                        return true;
+                        return false;
+                }
+        }
+
+        /**
+         * @param columns
+         *                indexes of the columns
+         * @return estimated number of rows satisfying the predicate, assuming
+         *         that the columns are independent
+         */
+        public double estimate(BitmapIndex[] columns) {
+                switch (kind) {
+                case EQ:
+                        return columns[column].getCardinality(value);
+                case NOT:
+                        return columns[0].getRows() - children[0].estimate(columns);
+                case AND:
+                        double rows = columns[0].getRows();
+                        double e = rows;
+                        for (Predicate p : children)
+                                e *= p.estimate(columns) / rows;
+                        return e;
+                default:
+                        double sum = 0;
+                        for (Predicate p : children)
+                                sum += p.estimate(columns);
+                        return Math.min(columns[0].getRows(), sum);
+                }
+        }
+
+        /**
+         * @param columns
+         *                indexes of the columns, all of the same scheme
+         * @param optimize
+         *                whether to reorder the operands, to turn negations
+         *                into differences and to stop on empty intersections
+         * @return the rows satisfying the predicate, as a bitmap of the scheme
+         *         of the indexes (possibly one of the indexes themselves)
+         */
+        public Object evaluate(BitmapIndex[] columns, boolean optimize) {
+                Scheme scheme = columns[0].getScheme();
+                switch (kind) {
+                case EQ:
+                        return columns[column].get(value);
+                case NOT:
+                        return scheme.andNot(columns[0].getAll(),
+                                children[0].evaluate(columns, optimize));
+                case OR:
+                        List<Predicate> operands = Arrays.asList(children);
+                        if (optimize)
+                                operands = byEstimate(operands, columns, false);
+                        Object answer = operands.get(0).evaluate(columns, optimize);
+                        for (int k = 1; k < operands.size(); ++k)
+                                answer = scheme.or(answer, operands
+                                        .get(k).evaluate(columns, optimize));
+                        return answer;
+                default:
+                        if (!optimize) {
+                                answer = children[0].evaluate(columns, false);
+                                for (int k = 1; k < children.length; ++k)
+                                        answer = scheme.and(answer,
+                                                children[k].evaluate(columns, false));
+                                return answer;
+                        }
+                        List<Predicate> positives = new ArrayList<Predicate>();
+                        List<Predicate> negatives = new ArrayList<Predicate>();
+                        for (Predicate p : children)
+                                if (p.kind == Kind.NOT)
+                                        negatives.add(p.children[0]);
+                                else
+                                        positives.add(p);
+                        // the most selective first, then the largest removals
+                        positives = byEstimate(positives, columns, false);
+                        negatives = byEstimate(negatives, columns, true);
+                        answer = positives.isEmpty() ? columns[0].getAll()
+                                : positives.get(0).evaluate(columns, true);
+                        for (int k = 1; k < positives.size(); ++k) {
+                                if (scheme.isEmpty(answer))
+                                        return answer;
+                                answer = scheme.and(answer, positives
+                                        .get(k).evaluate(columns, true));
+                        }
+                        for (Predicate p : negatives) {
+                                if (scheme.isEmpty(answer))
+                                        return answer;
+                                answer = scheme.andNot(answer,
+                                        p.evaluate(columns, true));
+                        }
+                        return answer;
+                }
+        }
+
+        private static List<Predicate> byEstimate(List<Predicate> predicates,
+                final BitmapIndex[] columns, final boolean decreasing) {
+                final double[] estimates = new double[predicates.size()];
+                List<Integer> order = new ArrayList<Integer>();
+                for (int k = 0; k < estimates.length; ++k) {
+                        estimates[k] = predicates.get(k).estimate(columns);
+                        order.add(k);
+                }
+                Collections.sort(order, new Comparator<Integer>() {
+                        @Override
+                        public int compare(Integer k1, Integer k2) {
+                                int c = Double.compare(estimates[k1], estimates[k2]);
+                                return decreasing ? -c : c;
+                        }
+                });
+                List<Predicate> answer = new ArrayList<Predicate>(order.size());
+                for (int k : order)
+                        answer.add(predicates.get(k));
+                return answer;
+        }
+
+        @Override
+        public String toString() {
+                switch (kind) {
+                case EQ:
+                        return "c" + column + "=" + value;
+                case NOT:
+                        return "NOT " + children[0];
+                default:
+                        StringBuilder sb = new StringBuilder("(");
+                        for (int k = 0; k < children.length; ++k)
+                                sb.append(k == 0 ? "" : " " + kind + " ").append(
+                                        children[k]);
+                        return sb.append(")").toString();
+                }
+        }
+}
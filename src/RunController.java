@@ -0,0 +1,332 @@
+/*
+ * (c) Samy Chambi and Daniel Lemire
+ */
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ * Decides how many iterations of a benchmark loop to run, in place of a
+ * fixed number of iterations. It only times: the answers are verified by a
+ * separate pass, with no controller.
+ *
+ * The controller watches the arrays where the benchmark accumulates its
+ * timings, one cell per scheme and operation. The first iterations are a
+ * warmup: it is over once the JIT compiler has been quiet and, for every
+ * cell, the median timings of two successive windows of iterations agree, so
+ * that the cheap cells are not hidden behind the expensive ones. The arrays
+ * are then reset, and
+ * the iterations go on until the 95% confidence interval of every cell is
+ * within the target precision, or the time budget is spent. The budget covers
+ * the warmup and the measures: the warmup is stopped after half of it.
+ *
+ * A cell taking less than MIN_CELL_TIME per iteration, such as a single
+ * remove, is mostly the granularity of System.nanoTime: its precision is
+ * printed but does not hold the measures back.
+ *
+ * Usage:
+ *
+ * <pre>
+ * RunController rc = new RunController();
+ * rc.watch(timings);
+ * rc.follow(storageinbits); // reset with the timings, no precision
+ * while (rc.next()) {
+ *         ... // one iteration, adding to timings and storageinbits
+ * }
+ * // averages are timings[k] / rc.getSamples()
+ * </pre>
+ *
+ */
+public class RunController {
+
+        /**
+         * relative half-width of the 95% confidence interval to reach
+         */
+        public static double precision = 0.02;
+
+        /**
+         * time budget in nanoseconds of the warmup and the measures together,
+         * the warmup being stopped after half of it (the measures may run past
+         * it to get 2 iterations)
+         */
+        public static long budget = 10000000000L;
+
+        /**
+         * minimal mean time in nanoseconds of a cell per iteration for its
+         * precision to be required: System.nanoTime ticks every 30 to 50 ns,
+         * and a single operation timed alone varies with the caches
+         */
+        public static final double MIN_CELL_TIME = 10000;
+
+        /**
+         * minimal number of measured iterations before stopping on precision
+         * (the budget may stop the measures after 2 iterations)
+         */
+        public static final int MIN_SAMPLES = 10;
+
+        /**
+         * maximal number of measured iterations
+         */
+        public static final int MAX_SAMPLES = 100000;
+
+        /**
+         * number of iterations of the windows compared during the warmup
+         */
+        public static final int WINDOW = 5;
+
+        /**
+         * maximal relative difference between the median times of a cell in
+         * two successive windows for the warmup to be over
+         */
+        public static final double STABILITY = 0.05;
+
+        /**
+         * maximal fraction of a window spent compiling for the warmup to be
+         * over
+         */
+        public static final double JIT_QUIET = 0.01;
+
+        private static final double Z95 = 1.96;
+
+        private final List<double[]> watched = new ArrayList<double[]>();
+        private final List<double[]> followed = new ArrayList<double[]>();
+        private final List<double[]> last = new ArrayList<double[]>();
+        private final List<double[]> sums = new ArrayList<double[]>();
+        private final List<double[]> squares = new ArrayList<double[]>();
+        private final CompilationMXBean jit = ManagementFactory
+                .getCompilationMXBean();
+        // timings of each iteration of the warmup, cells of all the arrays
+        private final List<double[]> deltas = new ArrayList<double[]>();
+        private final List<Long> ends = new ArrayList<Long>();
+        private final List<Long> jitTimes = new ArrayList<Long>();
+        private boolean warm;
+        private boolean converged = true;
+        private boolean exhausted = false;
+        private int iterations = 0;
+        private int warmup = 0;
+        private int samples = 0;
+        private long start;
+
+        /**
+         * Warmup, then measures until the target precision or the budget is
+         * reached.
+         */
+        public RunController() {
+                this.warm = false;
+        }
+
+        /**
+         * @param cells
+         *                accumulated timings, used to decide the warmup and
+         *                the precision
+         */
+        public void watch(double[] cells) {
+                watched.add(cells);
+                last.add(cells.clone());
+                sums.add(new double[cells.length]);
+                squares.add(new double[cells.length]);
+        }
+
+        /**
+         * @param cells
+         *                accumulated values reset with the watched ones
+         */
+        public void follow(double[] cells) {
+                followed.add(cells);
+        }
+
+        /**
+         * To be called before each iteration.
+         *
+         * @return whether another iteration should be run
+         */
+        public boolean next() {
+                long now = System.nanoTime();
+                if (iterations == 0)
+                        start = now;
+                else
+                        record(now);
+                for (int a = 0; a < watched.size(); ++a)
+                        System.arraycopy(watched.get(a), 0, last.get(a), 0,
+                                watched.get(a).length);
+                if (warm && samples >= 2) {
+                        if (now - start > budget) {
+                                exhausted = true;
+                                return false;
+                        }
+                        if (samples >= MAX_SAMPLES
+                                || (samples >= MIN_SAMPLES && isPrecise()))
+                                return false;
+                }
+                ++iterations;
+                return true;
+        }
+
+        private void record(long now) {
+                int count = 0;
+                for (double[] cells : watched)
+                        count += cells.length;
+                double[] iteration = new double[count];
+                int c = 0;
+                for (int a = 0; a < watched.size(); ++a) {
+                        double[] cells = watched.get(a);
+                        for (int k = 0; k < cells.length; ++k) {
+                                double delta = cells[k] - last.get(a)[k];
+                                iteration[c++] = delta;
+                                if (warm) {
+                                        sums.get(a)[k] += delta;
+                                        squares.get(a)[k] += delta * delta;
+                                }
+                        }
+                }
+                if (warm) {
+                        ++samples;
+                        return;
+                }
+                deltas.add(iteration);
+                ends.add(now);
+                jitTimes.add(jit.isCompilationTimeMonitoringSupported() ? jit
+                        .getTotalCompilationTime() : 0);
+                boolean over = now - start > budget / 2;
+                if (over)
+                        converged = false;
+                if (over || isSteady()) {
+                        warm = true;
+                        warmup = iterations;
+                        for (double[] cells : watched)
+                                Arrays.fill(cells, 0);
+                        for (double[] cells : followed)
+                                Arrays.fill(cells, 0);
+                }
+        }
+
+        // every cell takes the same time in the last two windows and the JIT
+        // is quiet
+        private boolean isSteady() {
+                int n = deltas.size();
+                if (n < 2 * WINDOW + 1)
+                        return false;
+                for (int c = 0; c < deltas.get(n - 1).length; ++c) {
+                        double previous = median(n - 2 * WINDOW, c);
+                        double current = median(n - WINDOW, c);
+                        if (Math.abs(current - previous) > STABILITY * previous)
+                                return false;
+                }
+                // compilation times are in ms
+                double compiling = (jitTimes.get(n - 1) - jitTimes.get(n - 1 - WINDOW)) * 1e6;
+                double elapsed = ends.get(n - 1) - ends.get(n - 1 - WINDOW);
+                return compiling <= JIT_QUIET * elapsed;
+        }
+
+        // median of a cell over the window of iterations starting at from
+        private double median(int from, int cell) {
+                double[] window = new double[WINDOW];
+                for (int k = 0; k < WINDOW; ++k)
+                        window[k] = deltas.get(from + k)[cell];
+                Arrays.sort(window);
+                return window[WINDOW / 2];
+        }
+
+        /**
+         * @return whether every watched cell is within the target precision,
+         *         except those shorter than MIN_CELL_TIME
+         */
+        public boolean isPrecise() {
+                for (int a = 0; a < watched.size(); ++a)
+                        for (int k = 0; k < watched.get(a).length; ++k)
+                                if (!isShort(a, k)
+                                        && getPrecision(a, k) > precision)
+                                        return false;
+                return true;
+        }
+
+        // the cell takes less than MIN_CELL_TIME per measured iteration
+        private boolean isShort(int array, int cell) {
+                return samples > 0
+                        && Math.abs(sums.get(array)[cell]) < MIN_CELL_TIME * samples;
+        }
+
+        private int countShort() {
+                int count = 0;
+                for (int a = 0; a < watched.size(); ++a)
+                        for (int k = 0; k < watched.get(a).length; ++k)
+                                if (sums.get(a)[k] != 0 && isShort(a, k))
+                                        ++count;
+                return count;
+        }
+
+        /**
+         * @return number of measured iterations
+         */
+        public int getSamples() {
+                return samples;
+        }
+
+        /**
+         * @return number of warmup iterations
+         */
+        public int getWarmup() {
+                return warmup;
+        }
+
+        /**
+         * @param array
+         *                index of a watched array, in the order of the calls
+         *                to watch
+         * @param cell
+         *                index in the array
+         * @return relative half-width of the 95% confidence interval of the
+         *         mean of the cell (0 for a cell always at 0)
+         */
+        public double getPrecision(int array, int cell) {
+                double sum = sums.get(array)[cell];
+                if (sum == 0)
+                        return 0;
+                if (samples < 2)
+                        return Double.POSITIVE_INFINITY;
+                double mean = sum / samples;
+                double variance = Math.max(0, (squares.get(array)[cell] - samples
+                        * mean * mean)
+                        / (samples - 1));
+                return Z95 * Math.sqrt(variance / samples) / Math.abs(mean);
+        }
+
+        /**
+         * @return a comment line with the number of iterations
+         */
+        public String summary() {
+                return "# " + samples + " measured iterations after " + warmup
+                        + " warmup iterations"
+                        + (converged ? "" : " (warmup stopped by the budget)")
+                        + (exhausted ? ", measures stopped by the budget" : "")
+                        + (isPrecise() ? "" : ", the target precision of "
+                                + new DecimalFormat("0.0").format(100 * precision)
+                                + "% was not reached")
+                        + (countShort() == 0 ? "" : ", " + countShort()
+                                + " cells under " + (long) MIN_CELL_TIME
+                                + " ns per iteration (in parentheses) not held to it");
+        }
+
+        /**
+         * @param array
+         *                index of a watched array
+         * @return the precisions of its cells in %, tab separated, in
+         *         parentheses for the cells shorter than MIN_CELL_TIME
+         */
+        public String precisions(int array) {
+                DecimalFormat df = new DecimalFormat("0.00");
+                StringBuilder sb = new StringBuilder();
+                for (int k = 0; k < watched.get(array).length; ++k) {
+                        String p = df.format(100 * getPrecision(array, k));
+                        if (sums.get(array)[k] != 0 && isShort(array, k))
+                                p = "(" + p + ")";
+                        sb.append(k == 0 ? "" : "\t\t").append(p);
+                }
+                return sb.toString();
+        }
+}
@@ -0,0 +1,462 @@
+/*
+ * (c) Samy Chambi and Daniel Lemire
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.roaringbitmap.ArrayContainer;
+
+/**
+ *
+ * Scaling benchmark: the cardinality N of the bitmaps is swept over several
+ * orders of magnitude (10^6 to 10^9 by default) for a fixed density, and
+ * each scheme is measured at each point, by default in a forked JVM with a
+ * fixed maximal heap.
+ *
+ * For each point, we report the append time per integer, the intersection
+ * and union times with the bytes they allocate, and the heap used per
+ * integer. A point running out of memory, thrashing in the garbage
+ * collector or exceeding its time budget is reported as such, and the
+ * larger points of the same scheme are skipped.
+ *
+ * The integers are generated and appended by batches, so that the data
+ * never has to fit in an array. The heap used is measured after garbage
+ * collections: it is only meaningful for large N, below 10^6 the noise of a
+ * few hundred kilobytes dominates.
+ *
+ * Usage:
+ *
+ * <pre>
+ * java -cp ... ScalingBench [from=6] [to=9] [density=0.01,0.5] [schemes=bitset,concise,...] [xmx=4g] [timeout=600] [seed=0] [nofork]
+ * </pre>
+ *
+ */
+public class ScalingBench {
+
+        /**
+         * fraction of the time spent in the garbage collector beyond which a
+         * point is said to be thrashing
+         */
+        public static final double GC_LIMIT = 0.5;
+
+        /**
+         * the fraction of time spent in the garbage collector is only checked
+         * after this many nanoseconds
+         */
+        public static final long GC_WINDOW = 2000000000L;
+
+        /**
+         * the operations are repeated for at least this many nanoseconds
+         */
+        public static final long MIN_OP_TIME = 1000000000L;
+
+        /**
+         * maximal number of repetitions of an operation
+         */
+        public static final int MAX_REPEATS = 1000;
+
+        private static final int BATCH = 1 << 16;
+
+        private static int bogus = 0;
+
+        /**
+         * @param args
+         *                command line arguments, see the class documentation
+         */
+        public static void main(final String[] args) {
+                Locale.setDefault(Locale.US);
+                if (args.length > 0 && args[0].equals("point")) {
+                        // forked run of a single point
+                        Result r = runPoint(Scheme.forName(args[1]),
+                                Long.parseLong(args[2]),
+                                Double.parseDouble(args[3]),
+                                Long.parseLong(args[4]));
+                        System.out.println("result " + r);
+                        System.out.println("#ignore = " + bogus);
+                        System.exit(0);
+                }
+                int from = 6, to = 9;
+                double[] densities = {0.01, 0.5};
+                List<Scheme> schemes = new ArrayList<Scheme>();
+                String xmx = "4g";
+                long timeout = 600;
+                long seed = 0;
+                boolean fork = true;
+                for (String arg : args)
+                        if (arg.startsWith("from="))
+                                from = Integer.parseInt(arg.substring(5));
+                        else if (arg.startsWith("to="))
+                                to = Integer.parseInt(arg.substring(3));
+                        else if (arg.startsWith("density=")) {
+                                String[] ds = arg.substring(8).split(",");
+                                densities = new double[ds.length];
+                                for (int k = 0; k < ds.length; ++k)
+                                        densities[k] = Double.parseDouble(ds[k]);
+                        } else if (arg.startsWith("schemes=")) {
+                                for (String name : arg.substring(8).split(","))
+                                        schemes.add(Scheme.forName(name));
+                        } else if (arg.startsWith("xmx="))
+                                xmx = arg.substring(4);
+                        else if (arg.startsWith("timeout="))
+                                timeout = Long.parseLong(arg.substring(8));
+                        else if (arg.startsWith("seed="))
+                                seed = Long.parseLong(arg.substring(5));
+                        else if (arg.equals("nofork"))
+                                fork = false;
+                        else
+                                throw new IllegalArgumentException("unknown argument: " + arg);
+                if (schemes.isEmpty())
+                        schemes.addAll(Arrays.asList(Scheme.values()));
+                System.out.println("# Scaling benchmark");
+                System.out.println("########");
+                System.out.println("# " + System.getProperty("java.vendor")
+                        + " " + System.getProperty("java.version") + " "
+                        + System.getProperty("java.vm.name"));
+                System.out.println("# " + System.getProperty("os.name") + " "
+                        + System.getProperty("os.arch") + " "
+                        + System.getProperty("os.version"));
+                System.out.println("# processors: "
+                        + Runtime.getRuntime().availableProcessors());
+                if (fork)
+                        System.out.println("# each point runs in a forked JVM with -Xmx"
+                                + xmx + " and a budget of " + timeout + " s");
+                else
+                        System.out.println("# max mem.: "
+                                + Runtime.getRuntime().maxMemory());
+                System.out.println("########");
+                DecimalFormat df = new DecimalFormat("0.000E0");
+                DecimalFormat dfb = new DecimalFormat("000.0");
+                for (double d : densities)
+                        for (Scheme scheme : schemes) {
+                                System.out.println("### " + scheme
+                                        + " scaling, density " + d);
+                                System.out
+                                        .println("# N\t\tappend ns/int\tand ns\t\tor ns\t\tand bytes\tor bytes\theap bits/int\tstatus");
+                                boolean failed = false;
+                                long N = 1;
+                                for (int e = 0; e < from; ++e)
+                                        N *= 10;
+                                for (int e = from; e <= to; ++e, N *= 10) {
+                                        Result r;
+                                        if (N / d > Integer.MAX_VALUE)
+                                                r = new Result("universe");
+                                        else if (failed)
+                                                r = new Result("skipped");
+                                        else if (fork)
+                                                r = runForked(scheme, N, d, seed, xmx, timeout);
+                                        else
+                                                r = runPoint(scheme, N, d, seed);
+                                        if (!r.status.equals("ok") && !r.status.equals("universe"))
+                                                failed = true;
+                                        if (r.status.equals("ok"))
+                                                System.out.println(df.format(N) + "\t\t"
+                                                        + df.format(r.append) + "\t\t"
+                                                        + df.format(r.and) + "\t\t"
+                                                        + df.format(r.or) + "\t\t"
+                                                        + df.format(r.andBytes) + "\t\t"
+                                                        + df.format(r.orBytes) + "\t\t"
+                                                        + dfb.format(r.bits) + "\t\t"
+                                                        + r.status);
+                                        else
+                                                System.out.println(df.format(N)
+                                                        + "\t\t-\t\t-\t\t-\t\t-\t\t-\t\t-\t\t"
+                                                        + r.status);
+                                }
+                                System.out.println();
+                        }
+                System.out.println("#ignore = " + bogus);
+        }
+
+        /**
+         * Measures of a point of the scaling curve of a scheme.
+         */
+        static final class Result {
+                // ok, oom, gc (thrashing), timeout, crash, universe (N/d does
+                // not fit in 31 bits) or skipped (a smaller point failed)
+                String status;
+                double append, and, or, andBytes, orBytes, bits;
+
+                Result(String status) {
+                        this.status = status;
+                }
+
+                static Result parse(String line) {
+                        String[] f = line.trim().split(" ");
+                        Result r = new Result(f[1]);
+                        if (f.length == 8) {
+                                r.append = Double.parseDouble(f[2]);
+                                r.and = Double.parseDouble(f[3]);
+                                r.or = Double.parseDouble(f[4]);
+                                r.andBytes = Double.parseDouble(f[5]);
+                                r.orBytes = Double.parseDouble(f[6]);
+                                r.bits = Double.parseDouble(f[7]);
+                        }
+                        return r;
+                }
+
+                @Override
+                public String toString() {
+                        if (!status.equals("ok"))
+                                return status;
+                        return status + " " + append + " " + and + " " + or + " "
+                                + andBytes + " " + orBytes + " " + bits;
+                }
+        }
+
+        /**
+         * Runs a point in a new JVM and waits for its result.
+         *
+         * @param scheme
+         *                the benchmarked scheme
+         * @param N
+         *                cardinality of the bitmaps
+         * @param d
+         *                density
+         * @param seed
+         *                seed of the data
+         * @param xmx
+         *                maximal heap of the forked JVM (e.g. 4g)
+         * @param timeout
+         *                time budget in seconds
+         * @return the measures, or the reason why there are none
+         */
+        public static Result runForked(Scheme scheme, long N, double d, long seed,
+                String xmx, long timeout) {
+                String java = System.getProperty("java.home") + File.separator
+                        + "bin" + File.separator + "java";
+                ProcessBuilder pb = new ProcessBuilder(java, "-Xmx" + xmx, "-cp",
+                        System.getProperty("java.class.path"),
+                        ScalingBench.class.getName(), "point",
+                        scheme.toString(), Long.toString(N),
+                        Double.toString(d), Long.toString(seed));
+                pb.redirectErrorStream(true);
+                final Process p;
+                try {
+                        p = pb.start();
+                } catch (IOException e) {
+                        System.out.println("# cannot fork: " + e.getMessage());
+                        return new Result("crash");
+                }
+                final List<String> output = new ArrayList<String>();
+                Thread reader = new Thread() {
+                        @Override
+                        public void run() {
+                                try {
+                                        BufferedReader in = new BufferedReader(
+                                                new InputStreamReader(p.getInputStream()));
+                                        String line;
+                                        while ((line = in.readLine()) != null)
+                                                synchronized (output) {
+                                                        output.add(line);
+                                                }
+                                } catch (IOException e) {
+                                        // the process was destroyed
+                                }
+                        }
+                };
+                reader.start();
+                long deadline = System.nanoTime() + timeout * 1000000000L;
+                Integer exit = null;
+                while (exit == null && System.nanoTime() < deadline)
+                        try {
+                                exit = p.exitValue();
+                        } catch (IllegalThreadStateException e) {
+                                try {
+                                        Thread.sleep(100);
+                                } catch (InterruptedException ie) {
+                                        break;
+                                }
+                        }
+                if (exit == null) {
+                        p.destroy();
+                        return new Result("timeout");
+                }
+                try {
+                        reader.join();
+                } catch (InterruptedException e) {
+                        // keep what was read
+                }
+                synchronized (output) {
+                        for (String line : output)
+                                if (line.startsWith("result "))
+                                        return Result.parse(line);
+                        for (String line : output)
+                                if (line.contains("OutOfMemoryError"))
+                                        return new Result("oom");
+                }
+                return new Result("crash");
+        }
+
+        /**
+         * Measures a scheme on two bitmaps of N integers in this JVM.
+         *
+         * @param scheme
+         *                the benchmarked scheme
+         * @param N
+         *                cardinality of the bitmaps
+         * @param d
+         *                density
+         * @param seed
+         *                seed of the data
+         * @return the measures, or the reason why there are none
+         */
+        public static Result runPoint(Scheme scheme, long N, double d, long seed) {
+                ArrayContainer.DEFAULT_MAX_SIZE = 4096;
+                Result r = new Result("ok");
+                Object b1 = null, b2 = null;
+                try {
+                        int[] batch = new int[BATCH];
+                        GcWatch watch = new GcWatch();
+                        // loads the classes of the scheme before measuring the heap
+                        bogus += scheme.sizeInBytes(build(scheme, new UniformStream(1000,
+                                d, seed), batch, watch));
+                        allocatedBytes();
+                        long before = usedHeap();
+                        long bef = System.nanoTime();
+                        b1 = build(scheme, new UniformStream(N, d, seed), batch, watch);
+                        long aft = System.nanoTime();
+                        r.append = (aft - bef) / (double) N;
+                        b2 = build(scheme, new UniformStream(N, d, seed + 1), batch, watch);
+                        r.bits = (usedHeap() - before) * 8.0 / (2 * N);
+                        double[] and = measure(scheme, b1, b2, true);
+                        r.and = and[0];
+                        r.andBytes = and[1];
+                        double[] or = measure(scheme, b1, b2, false);
+                        r.or = or[0];
+                        r.orBytes = or[1];
+                } catch (OutOfMemoryError e) {
+                        b1 = null;
+                        b2 = null;
+                        r = new Result("oom");
+                } catch (Thrashing e) {
+                        b1 = null;
+                        b2 = null;
+                        r = new Result("gc");
+                }
+                return r;
+        }
+
+        // time and allocated bytes of an intersection or a union
+        private static double[] measure(Scheme scheme, Object b1, Object b2, boolean and) {
+                GcWatch watch = new GcWatch();
+                long bytes = allocatedBytes();
+                long total = 0;
+                int reps = 0;
+                while (reps == 0 || (total < MIN_OP_TIME && reps < MAX_REPEATS)) {
+                        long bef = System.nanoTime();
+                        Object b = and ? scheme.and(b1, b2) : scheme.or(b1, b2);
+                        long aft = System.nanoTime();
+                        total += aft - bef;
+                        bogus += scheme.sizeInBytes(b);
+                        ++reps;
+                        watch.check();
+                }
+                bytes = bytes < 0 ? -1 : allocatedBytes() - bytes;
+                return new double[] {total / (double) reps,
+                        bytes < 0 ? -1 : bytes / (double) reps};
+        }
+
+        private static Object build(Scheme scheme, UniformStream s, int[] batch,
+                GcWatch watch) {
+                Object b = scheme.create();
+                int n;
+                while ((n = s.fill(batch)) > 0) {
+                        scheme.addAll(b, n == batch.length ? batch : Arrays.copyOf(batch, n));
+                        watch.check();
+                }
+                return b;
+        }
+
+        // collects until the used heap stops shrinking
+        private static long usedHeap() {
+                Runtime rt = Runtime.getRuntime();
+                long used = Long.MAX_VALUE;
+                for (int k = 0; k < 10; ++k) {
+                        System.gc();
+                        long u = rt.totalMemory() - rt.freeMemory();
+                        if (u >= used)
+                                return used;
+                        used = u;
+                }
+                return used;
+        }
+
+        // bytes allocated by the current thread so far, -1 if unsupported
+        private static long allocatedBytes() {
+                ThreadMXBean t = ManagementFactory.getThreadMXBean();
+                if (t instanceof com.sun.management.ThreadMXBean)
+                        return ((com.sun.management.ThreadMXBean) t)
+                                .getThreadAllocatedBytes(Thread.currentThread().getId());
+                return -1;
+        }
+
+        private static long gcTime() {
+                long time = 0;
+                for (GarbageCollectorMXBean gc : ManagementFactory
+                        .getGarbageCollectorMXBeans())
+                        time += Math.max(0, gc.getCollectionTime());
+                return time * 1000000L;
+        }
+
+        /**
+         * Thrown when the garbage collector takes most of the time.
+         */
+        static final class Thrashing extends RuntimeException {
+                private static final long serialVersionUID = 1L;
+        }
+
+        // watches the fraction of the time spent in the garbage collector
+        private static final class GcWatch {
+                private final long start = System.nanoTime();
+                private final long startGc = gcTime();
+
+                void check() {
+                        long elapsed = System.nanoTime() - start;
+                        if (elapsed > GC_WINDOW
+                                && gcTime() - startGc > GC_LIMIT * elapsed)
+                                throw new Thrashing();
+                }
+        }
+
+        /**
+         * Sorted integers of a given density, drawn with geometric gaps,
+         * generated a batch at a time.
+         */
+        static final class UniformStream {
+                private final Random rand;
+                private final double logq;
+                private long left;
+                private long next = -1;
+
+                UniformStream(long n, double d, long seed) {
+                        rand = new Random(seed);
+                        logq = d < 1 ? Math.log(1 - d) : 0;
+                        left = n;
+                }
+
+                int fill(final int[] batch) {
+                        int n = 0;
+                        while (n < batch.length && left > 0) {
+                                long gap = logq == 0 ? 1
+                                        : 1 + (long) (Math.log(1 - rand.nextDouble()) / logq);
+                                --left;
+                                // keeps room for the remaining integers
+                                next = Math.min(next + gap, Integer.MAX_VALUE - left);
+                                batch[n++] = (int) next;
+                        }
+                        return n;
+                }
+        }
+}
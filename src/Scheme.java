@@ -0,0 +1,374 @@
+/*
+ * (c) Samy Chambi and Daniel Lemire
+ */
+
+import java.util.BitSet;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import it.uniroma3.mat.extendedset.intset.ConciseSet;
+
+/**
+ *
+ * The benchmarked bitmap schemes, with the operations that the benchmarks
+ * apply to any of them, so that the benchmarks loop over the schemes instead
+ * of repeating their code for each one. The bitmaps are handled as Objects,
+ * of the class of their scheme.
+ *
+ * The set operations never modify their arguments, so that a bitmap can be
+ * combined by several queries. Their results share no mutable node with
+ * them and can be added to, except those of the and and or of LAZYVB: the
+ * library shares the subtrees present on one side only and modifies them
+ * in place, so these results are read-only.
+ *
+ */
+public enum Scheme {
+
+        /** java.util.BitSet */
+        BITSET("bitset"),
+        /** ConciseSet */
+        CONCISE("concise"),
+        /** ConciseSet in WAH mode */
+        WAH("wah"),
+        /** HierarchiqueBitmap */
+        HIRB("HirB"),
+        /** LazyHierarchiqueBitmap */
+        LAZYHB("LazyHB"),
+        /** LazyVarByteHierarchBmp */
+        LAZYVB("LazyVB"),
+        /** RoaringBitmap */
+        ROAR("roar"),
+        /**
+         * LazyVarByteHierarchBmp, intersected and merged with
+         * LazyVarByteHierarchBmpOps instead of the library
+         */
+        LAZYVB_OPS("LazyVB-ops");
+
+        private final String label;
+
+        private Scheme(String label) {
+                this.label = label;
+        }
+
+        /**
+         * @return the short name of the scheme, as printed by the benchmarks
+         */
+        @Override
+        public String toString() {
+                return label;
+        }
+
+        /**
+         * @param label
+         *                short name of a scheme, in any case
+         * @return the scheme
+         * @throws IllegalArgumentException
+         *                 if no scheme has this name
+         */
+        public static Scheme forName(String label) {
+                for (Scheme s : values())
+                        if (s.label.equalsIgnoreCase(label))
+                                return s;
+                throw new IllegalArgumentException("unknown scheme: " + label);
+        }
+
+        /**
+         * @return a new empty bitmap
+         */
+        public Object create() {
+                switch (this) {
+                case BITSET:
+                        return new BitSet();
+                case CONCISE:
+                        return new ConciseSet();
+                case WAH:
+                        return new ConciseSet(true);
+                case HIRB:
+                        return new HierarchiqueBitmap();
+                case LAZYHB:
+                        return new LazyHierarchiqueBitmap();
+                case LAZYVB:
+                case LAZYVB_OPS:
+                        return new LazyVarByteHierarchBmp();
+                default:
+                        return new RoaringBitmap();
+                }
+        }
+
+        /**
+         * @param a
+         *                sorted integers
+         * @return a new bitmap holding them
+         */
+        public Object build(int[] a) {
+                Object b = create();
+                addAll(b, a);
+                return b;
+        }
+
+        /**
+         * Appends integers, with the bulk insertion of the scheme when it has
+         * one.
+         *
+         * @param b
+         *                a bitmap, modified
+         * @param a
+         *                sorted integers, above those of b
+         */
+        public void addAll(Object b, int[] a) {
+                switch (this) {
+                case BITSET:
+                        for (int x : a)
+                                ((BitSet) b).set(x);
+                        break;
+                case CONCISE:
+                case WAH:
+                        for (int x : a)
+                                ((ConciseSet) b).add(x);
+                        break;
+                case HIRB:
+                        ((HierarchiqueBitmap) b).addAll(a);
+                        break;
+                case LAZYHB:
+                        ((LazyHierarchiqueBitmap) b).addAll(a);
+                        break;
+                case LAZYVB:
+                case LAZYVB_OPS:
+                        ((LazyVarByteHierarchBmp) b).addAll(a);
+                        break;
+                default:
+                        for (int x : a)
+                                ((RoaringBitmap) b).add(x);
+                }
+        }
+
+        /**
+         * Adds an integer, in any order.
+         *
+         * @param b
+         *                a bitmap, modified
+         * @param x
+         *                the integer to add
+         */
+        public void add(Object b, int x) {
+                switch (this) {
+                case BITSET:
+                        ((BitSet) b).set(x);
+                        break;
+                case CONCISE:
+                case WAH:
+                        ((ConciseSet) b).add(x);
+                        break;
+                case HIRB:
+                        ((HierarchiqueBitmap) b).add(x);
+                        break;
+                case LAZYHB:
+                        ((LazyHierarchiqueBitmap) b).add(x);
+                        break;
+                case LAZYVB:
+                case LAZYVB_OPS:
+                        ((LazyVarByteHierarchBmp) b).add(x);
+                        break;
+                default:
+                        ((RoaringBitmap) b).add(x);
+                }
+        }
+
+        /**
+         * @return whether b holds x
+         */
+        public boolean contains(Object b, int x) {
+                switch (this) {
+                case BITSET:
+                        return ((BitSet) b).get(x);
+                case CONCISE:
+                case WAH:
+                        return ((ConciseSet) b).contains(x);
+                case HIRB:
+                        return ((HierarchiqueBitmap) b).contains(x);
+                case LAZYHB:
+                        return ((LazyHierarchiqueBitmap) b).contains(x);
+                case LAZYVB:
+                case LAZYVB_OPS:
+                        return ((LazyVarByteHierarchBmp) b).contains(x);
+                default:
+                        return ((RoaringBitmap) b).contains(x);
+                }
+        }
+
+        /**
+         * @return a new bitmap, intersection of b1 and b2
+         */
+        public Object and(Object b1, Object b2) {
+                switch (this) {
+                case BITSET:
+                        BitSet bs = (BitSet) ((BitSet) b1).clone(); // not inplace
+                        bs.and((BitSet) b2);
+                        return bs;
+                case CONCISE:
+                case WAH:
+                        return ((ConciseSet) b1).intersection((ConciseSet) b2);
+                case HIRB:
+                        return HierarchiqueBitmap.AND((HierarchiqueBitmap) b1,
+                                (HierarchiqueBitmap) b2);
+                case LAZYHB:
+                        return LazyHierarchiqueBitmap.AND((LazyHierarchiqueBitmap) b1,
+                                (LazyHierarchiqueBitmap) b2);
+                case LAZYVB:
+                        // misses integers on sparse data, see LAZYVB_OPS
+                        try {
+                                return LazyVarByteHierarchBmp.AND((LazyVarByteHierarchBmp) b1,
+                                        (LazyVarByteHierarchBmp) b2);
+                        } catch (Exception e) {
+                                throw new IllegalStateException(e);
+                        }
+                case LAZYVB_OPS:
+                        return LazyVarByteHierarchBmpOps.AND((LazyVarByteHierarchBmp) b1,
+                                (LazyVarByteHierarchBmp) b2);
+                default:
+                        return RoaringBitmap.and((RoaringBitmap) b1, (RoaringBitmap) b2);
+                }
+        }
+
+        /**
+         * @return a new bitmap, union of b1 and b2
+         */
+        public Object or(Object b1, Object b2) {
+                switch (this) {
+                case BITSET:
+                        BitSet bs = (BitSet) ((BitSet) b1).clone(); // not inplace
+                        bs.or((BitSet) b2);
+                        return bs;
+                case CONCISE:
+                case WAH:
+                        return ((ConciseSet) b1).union((ConciseSet) b2);
+                case HIRB:
+                        return HierarchiqueBitmap.OR((HierarchiqueBitmap) b1,
+                                (HierarchiqueBitmap) b2);
+                case LAZYHB:
+                        return LazyHierarchiqueBitmap.OR((LazyHierarchiqueBitmap) b1,
+                                (LazyHierarchiqueBitmap) b2);
+                case LAZYVB:
+                        // misses integers on sparse data, see LAZYVB_OPS
+                        try {
+                                return LazyVarByteHierarchBmp.OR((LazyVarByteHierarchBmp) b1,
+                                        (LazyVarByteHierarchBmp) b2);
+                        } catch (Exception e) {
+                                throw new IllegalStateException(e);
+                        }
+                case LAZYVB_OPS:
+                        return LazyVarByteHierarchBmpOps.OR((LazyVarByteHierarchBmp) b1,
+                                (LazyVarByteHierarchBmp) b2);
+                default:
+                        return RoaringBitmap.or((RoaringBitmap) b1, (RoaringBitmap) b2);
+                }
+        }
+
+        /**
+         * @return a new bitmap holding the integers of b1 that are not in b2
+         */
+        public Object andNot(Object b1, Object b2) {
+                switch (this) {
+                case BITSET:
+                        BitSet bs = (BitSet) ((BitSet) b1).clone(); // not inplace
+                        bs.andNot((BitSet) b2);
+                        return bs;
+                case CONCISE:
+                case WAH:
+                        return ((ConciseSet) b1).difference((ConciseSet) b2);
+                case HIRB:
+                        return HierarchiqueBitmapOps.ANDNOT((HierarchiqueBitmap) b1,
+                                (HierarchiqueBitmap) b2);
+                case LAZYHB:
+                        return LazyHierarchiqueBitmapOps.ANDNOT(
+                                (LazyHierarchiqueBitmap) b1,
+                                (LazyHierarchiqueBitmap) b2);
+                case LAZYVB:
+                case LAZYVB_OPS:
+                        return LazyVarByteHierarchBmpOps.ANDNOT(
+                                (LazyVarByteHierarchBmp) b1,
+                                (LazyVarByteHierarchBmp) b2);
+                default:
+                        return RoaringBitmap.andNot((RoaringBitmap) b1,
+                                (RoaringBitmap) b2);
+                }
+        }
+
+        /**
+         * Exact emptiness test, stopping at the first integer. For the tries,
+         * the intersections of the libraries can leave branches without
+         * leaves, so that the children of the root are not enough.
+         *
+         * @return whether b is empty
+         */
+        public boolean isEmpty(Object b) {
+                switch (this) {
+                case BITSET:
+                        return ((BitSet) b).isEmpty();
+                case CONCISE:
+                case WAH:
+                        return ((ConciseSet) b).isEmpty();
+                case HIRB:
+                        return HierarchiqueBitmapOps.isEmpty((HierarchiqueBitmap) b);
+                case LAZYHB:
+                        return LazyHierarchiqueBitmapOps.isEmpty((LazyHierarchiqueBitmap) b);
+                case LAZYVB:
+                case LAZYVB_OPS:
+                        return LazyVarByteHierarchBmpOps.isEmpty((LazyVarByteHierarchBmp) b);
+                default:
+                        return ((RoaringBitmap) b).isEmpty();
+                }
+        }
+
+        /**
+         * @return the integers of b, sorted
+         */
+        public int[] toArray(Object b) {
+                switch (this) {
+                case BITSET:
+                        BitSet bs = (BitSet) b;
+                        int[] a = new int[bs.cardinality()];
+                        int pos = 0;
+                        for (int x = bs.nextSetBit(0); x >= 0; x = bs.nextSetBit(x + 1))
+                                a[pos++] = x;
+                        return a;
+                case CONCISE:
+                case WAH:
+                        a = ((ConciseSet) b).toArray();
+                        return a == null ? new int[0] : a;
+                case HIRB:
+                        return HierarchiqueBitmapOps.toArray((HierarchiqueBitmap) b);
+                case LAZYHB:
+                        return LazyHierarchiqueBitmapOps.toArray((LazyHierarchiqueBitmap) b);
+                case LAZYVB:
+                case LAZYVB_OPS:
+                        return LazyVarByteHierarchBmpOps.toArray((LazyVarByteHierarchBmp) b);
+                default:
+                        return ((RoaringBitmap) b).toArray();
+                }
+        }
+
+        /**
+         * @return the estimated size of b in bytes, as in Main
+         */
+        public long sizeInBytes(Object b) {
+                switch (this) {
+                case BITSET:
+                        return ((BitSet) b).size() / 8;
+                case CONCISE:
+                case WAH:
+                        ConciseSet cs = (ConciseSet) b;
+                        return (long) (cs.size() * cs.collectionCompressionRatio() * 4);
+                case HIRB:
+                        // full subtrees of addRange are shared, not expanded
+                        return HierarchiqueBitmapOps.length((HierarchiqueBitmap) b) * 5L;
+                case LAZYHB:
+                        return ((LazyHierarchiqueBitmap) b).length() * 5L;
+                case LAZYVB:
+                case LAZYVB_OPS:
+                        return ((LazyVarByteHierarchBmp) b).length() * 5L;
+                default:
+                        return ((RoaringBitmap) b).getSizeInBytes();
+                }
+        }
+}